@@ -0,0 +1,103 @@
+"""Stand-in for `python -m ansible_runner run ... --json` used by the load tooling.
+
+Put this directory on PYTHONPATH when starting the service. Each run sleeps
+for a while and writes what ansible-runner writes in JSON mode: one JSON job
+event per line on stdout and in artifacts/<ident>/stdout, each event also as
+artifacts/<ident>/job_events/<counter>-<uuid>.json (written as -partial.json
+and renamed once complete), then rc and status. Tuned through the environment:
+
+    FAKE_RUNNER_SECONDS       run duration, default 5
+    FAKE_RUNNER_EVENTS        tasks run, each a task start and a runner_on_ok event spread over the run, default 1
+    FAKE_RUNNER_OUTPUT_BYTES  total task output carried by the events' stdout, default 16
+    FAKE_RUNNER_STATUS        successful (default) or failed
+"""
+import datetime
+import json
+import os
+import sys
+import time
+import uuid
+
+
+class EventWriter:
+    def __init__(self, artifacts, ident):
+        self.ident = ident
+        self.job_events = os.path.join(artifacts, "job_events")
+        os.makedirs(self.job_events, exist_ok=True)
+        self.stdout = open(os.path.join(artifacts, "stdout"), "w")
+        self.counter = 0
+        self.line = 0
+
+    def emit(self, event, stdout, event_data):
+        self.counter += 1
+        lines = stdout.count("\n") + (1 if stdout else 0)
+        record = {
+            "uuid": str(uuid.uuid4()),
+            "counter": self.counter,
+            "stdout": stdout,
+            "start_line": self.line,
+            "end_line": self.line + lines,
+            "runner_ident": self.ident,
+            "event": event,
+            "pid": os.getpid(),
+            "created": datetime.datetime.utcnow().isoformat(),
+            "event_data": event_data,
+        }
+        self.line += lines
+        name = "%d-%s" % (self.counter, record["uuid"])
+        partial = os.path.join(self.job_events, name + "-partial.json")
+        with open(partial, "w") as f:
+            json.dump(record, f)
+        os.rename(partial, os.path.join(self.job_events, name + ".json"))
+        line = json.dumps(record)
+        print(line, flush=True)
+        self.stdout.write(line + "\n")
+        self.stdout.flush()
+
+    def close(self):
+        self.stdout.close()
+
+
+def main(argv):
+    private_data_dir = argv[2]
+    ident = argv[argv.index("--ident") + 1]
+    artifacts = os.path.join(private_data_dir, "artifacts", ident)
+    os.makedirs(artifacts, exist_ok=True)
+
+    seconds = float(os.environ.get("FAKE_RUNNER_SECONDS", "5"))
+    events = max(1, int(os.environ.get("FAKE_RUNNER_EVENTS", "1")))
+    output_bytes = int(os.environ.get("FAKE_RUNNER_OUTPUT_BYTES", "16"))
+    status = os.environ.get("FAKE_RUNNER_STATUS", "successful")
+    failed = status != "successful"
+    chunk = "x" * max(0, output_bytes // events - 1)
+
+    writer = EventWriter(artifacts, ident)
+    writer.emit("playbook_on_start", "", {"playbook": "fake.yml"})
+    writer.emit("playbook_on_play_start", "\r\nPLAY [fake] " + "*" * 60, {"play": "fake"})
+    stats = {"ok": {}, "changed": {}, "failures": {}, "dark": {}, "skipped": {}}
+    for i in range(events):
+        task = "fake-%d" % i
+        writer.emit("playbook_on_task_start", "\r\nTASK [%s] " % task + "*" * 60, {"task": task})
+        time.sleep(seconds / events)
+        host = "host-%d" % (i % 10)
+        task_failed = failed and i == events - 1
+        outcome = "failures" if task_failed else "ok"
+        stats[outcome][host] = stats[outcome].get(host, 0) + 1
+        stdout = ("fatal: [%s]: FAILED! => " if task_failed else "ok: [%s] => ") % host + chunk
+        writer.emit("runner_on_failed" if task_failed else "runner_on_ok", stdout,
+                    {"host": host, "task": task, "duration": 0.001, "res": {"changed": False}})
+    recap = "\r\nPLAY RECAP " + "*" * 60
+    for host in sorted(set(stats["ok"]) | set(stats["failures"])):
+        recap += "\r\n%-26s : ok=%d    changed=0    unreachable=0    failed=%d    skipped=0" % (
+            host, stats["ok"].get(host, 0), stats["failures"].get(host, 0))
+    writer.emit("playbook_on_stats", recap, stats)
+    writer.close()
+
+    with open(os.path.join(artifacts, "rc"), "w") as f:
+        f.write("2" if failed else "0")
+    with open(os.path.join(artifacts, "status"), "w") as f:
+        f.write(status)
+
+
+if __name__ == "__main__":
+    main(sys.argv)
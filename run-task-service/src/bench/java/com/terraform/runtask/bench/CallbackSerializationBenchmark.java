@@ -0,0 +1,80 @@
+package com.terraform.runtask.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.model.TerraformCallback;
+import com.terraform.runtask.service.CallbackPayloadWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation per callback body: the original three-HashMap, three-serialization
+ * path versus {@link CallbackPayloadWriter}. Run with {@code -prof gc} and
+ * compare {@code gc.alloc.rate.norm} (bytes per operation).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallbackSerializationBenchmark {
+
+    private final ObjectMapper sharedMapper = new ObjectMapper();
+    private final ObjectMapper legacyMapper = new ObjectMapper();
+    private CallbackPayloadWriter writer;
+    private TerraformCallback callback;
+
+    @Setup
+    public void setup() {
+        writer = new CallbackPayloadWriter(sharedMapper);
+        callback = TerraformCallback.builder()
+                .status("passed")
+                .message("Ansible playbook executed successfully (run_id: run-CLBZtSbNCcPEvCRk, execution_time: 18234ms)"
+                        + " - 3 host(s), 12 task(s): ok=30 changed=4 failed=0 unreachable=0 skipped=6")
+                .url("https://runtask.example.com/api/runs/run-CLBZtSbNCcPEvCRk-post_apply/output")
+                .build();
+    }
+
+    /**
+     * What {@code sendCallback} did originally: serialize the model for the log,
+     * build the JSON:API maps, serialize them for the log, then once more for the
+     * request body.
+     */
+    @Benchmark
+    public Object legacy() throws Exception {
+        String logged = legacyMapper.writeValueAsString(callback);
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("status", callback.getStatus());
+        attributes.put("message", callback.getMessage());
+        if (callback.getUrl() != null && !callback.getUrl().isEmpty()) {
+            attributes.put("url", callback.getUrl());
+        }
+        Map<String, Object> data = new HashMap<>();
+        data.put("type", "task-results");
+        data.put("attributes", attributes);
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("data", data);
+
+        String loggedPayload = legacyMapper.writeValueAsString(payload);
+        byte[] body = legacyMapper.writeValueAsBytes(payload);
+        return logged.length() + loggedPayload.length() + body.length;
+    }
+
+    @Benchmark
+    public Object streaming() throws Exception {
+        return writer.write(callback);
+    }
+}
@@ -0,0 +1,43 @@
+package com.terraform.runtask.bench;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples in nanoseconds and reports percentiles. Samples are
+ * kept exactly; a load run records one or two per webhook, so memory is not a
+ * concern at the sizes the driver produces.
+ */
+public class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int size;
+
+    public synchronized void record(long nanos) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+        }
+        samples[size++] = nanos;
+    }
+
+    public synchronized int count() {
+        return size;
+    }
+
+    /**
+     * One line with count, p50, p90, p99 and max in milliseconds.
+     */
+    public synchronized String summary() {
+        if (size == 0) {
+            return "n=0";
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        return String.format("n=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms", size,
+                millis(sorted, 0.50), millis(sorted, 0.90), millis(sorted, 0.99), sorted[size - 1] / 1e6);
+    }
+
+    private static double millis(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,172 @@
+package com.terraform.runtask.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the TFE task-results API. Accepts the callback PATCHes
+ * the service sends to {@code /api/v2/task-results/{id}} and records, per task
+ * result, the time from {@link #expect} until its final ({@code passed} or
+ * {@code failed}) callback arrived. Intermediate {@code running} callbacks are
+ * counted but do not complete a task result.
+ * <p>
+ * {@code delayMs} holds each response to simulate a slow TFE, and
+ * {@code failureRate} answers that fraction of PATCHes with {@code 503} to
+ * exercise the service's retries.
+ * <p>
+ * Also runs standalone for manual testing, printing counts every 10 seconds:
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench.main=com.terraform.runtask.bench.StubTfeServer \
+ *   -Dbench.args="--port 9099 --delay-ms 20 --failure-rate 0.05"
+ * </pre>
+ */
+public class StubTfeServer implements AutoCloseable {
+
+    private static final String PREFIX = "/api/v2/task-results/";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long delayMs;
+    private final double failureRate;
+
+    private final Map<String, Long> expected = new ConcurrentHashMap<>();
+    private final LatencyRecorder completion = new LatencyRecorder();
+    private final AtomicInteger patches = new AtomicInteger();
+    private final AtomicInteger failedOnPurpose = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger passed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger unexpected = new AtomicInteger();
+    private volatile CountDownLatch finals = new CountDownLatch(0);
+
+    public StubTfeServer(int port, long delayMs, double failureRate) throws IOException {
+        this.delayMs = delayMs;
+        this.failureRate = failureRate;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        this.executor = Executors.newFixedThreadPool(delayMs > 0 ? 64 : 8);
+        server.setExecutor(executor);
+        server.createContext(PREFIX, this::handle);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        StubTfeServer stub = new StubTfeServer(
+                Integer.parseInt(options.getOrDefault("port", "9099")),
+                Long.parseLong(options.getOrDefault("delay-ms", "0")),
+                Double.parseDouble(options.getOrDefault("failure-rate", "0")));
+        stub.start();
+        System.out.println("Stub TFE listening on 127.0.0.1:" + stub.server.getAddress().getPort());
+        while (true) {
+            Thread.sleep(10_000);
+            System.out.println(stub.counts());
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Registers the webhooks about to be sent; {@link #awaitFinals} waits for this many final callbacks.
+     */
+    public void expectTotal(int count) {
+        finals = new CountDownLatch(count);
+    }
+
+    /**
+     * Starts the clock for a task result; call just before sending its webhook.
+     */
+    public void expect(String taskResultId) {
+        expected.put(taskResultId, System.nanoTime());
+    }
+
+    /**
+     * Counts a task result that will never get a final callback, e.g. because its webhook failed.
+     */
+    public void abandon(String taskResultId) {
+        if (expected.remove(taskResultId) != null) {
+            finals.countDown();
+        }
+    }
+
+    public boolean awaitFinals(long timeout, TimeUnit unit) throws InterruptedException {
+        return finals.await(timeout, unit);
+    }
+
+    public LatencyRecorder getCompletion() {
+        return completion;
+    }
+
+    public String counts() {
+        return String.format("patches=%d (503 on purpose=%d) running=%d passed=%d failed=%d unexpected=%d",
+                patches.get(), failedOnPurpose.get(), running.get(), passed.get(), failed.get(), unexpected.get());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            patches.incrementAndGet();
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+            if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                failedOnPurpose.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            String id = exchange.getRequestURI().getPath().substring(PREFIX.length());
+            String status = status(body);
+            if ("running".equals(status)) {
+                running.incrementAndGet();
+            } else {
+                (("passed".equals(status)) ? passed : failed).incrementAndGet();
+                Long sent = expected.remove(id);
+                if (sent != null) {
+                    completion.record(System.nanoTime() - sent);
+                    finals.countDown();
+                } else {
+                    // Not sent by this driver, or a second final callback for the same task result
+                    unexpected.incrementAndGet();
+                }
+            }
+            exchange.sendResponseHeaders(200, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String status(byte[] body) {
+        try {
+            JsonNode json = objectMapper.readTree(body);
+            return json.path("data").path("attributes").path("status").asText("unknown");
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.terraform.runtask.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fires a burst of run-task webhooks at a running service and reports:
+ * <ul>
+ *   <li>webhook acknowledgement throughput and p50/p90/p99 latency;</li>
+ *   <li>end-to-end latency from sending each webhook until its final callback
+ *       reached the embedded {@link StubTfeServer}, and completed runs per second;</li>
+ *   <li>the service's peak live thread count and heap usage (sampled from
+ *       {@code /actuator/metrics}).</li>
+ * </ul>
+ * Start the service with the fake runner so runs hold a worker without real
+ * Ansible, or let {@code src/bench/load-test.sh} do all of it:
+ * <pre>
+ * PYTHONPATH=src/bench/fake-runner java -jar target/run-task-service-1.0.0.jar \
+ *   --ansible.runner.python.path=python3 --runtask.queue.workers=1000 --runtask.queue.capacity=2000
+ * mvn -Pbench compile exec:exec -Dbench.main=com.terraform.runtask.bench.WebhookLoadDriver \
+ *   -Dbench.args="--count 1000 --concurrency 1000"
+ * </pre>
+ * Options: {@code --target}, {@code --count}, {@code --concurrency},
+ * {@code --sink-port}, {@code --timeout-seconds}, {@code --stage},
+ * {@code --workspaces}, {@code --organizations}, {@code --callback-delay-ms},
+ * {@code --callback-failure-rate}, {@code --hmac-key} (signs each webhook the
+ * way TFE does, for a service with {@code runtask.admission.hmac-key} set).
+ */
+public class WebhookLoadDriver {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .executor(Executors.newFixedThreadPool(16))
+            .build();
+
+    private final String target;
+    private final int count;
+    private final int concurrency;
+    private final int sinkPort;
+    private final long timeoutSeconds;
+    private final String stage;
+    private final int workspaces;
+    private final int organizations;
+    private final long callbackDelayMs;
+    private final double callbackFailureRate;
+    private final Mac mac;
+
+    private final LatencyRecorder acknowledgements = new LatencyRecorder();
+    private final AtomicInteger accepted = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger peakThreads = new AtomicInteger();
+    private final AtomicLong peakHeap = new AtomicLong();
+
+    public WebhookLoadDriver(Map<String, String> options) {
+        this.target = options.getOrDefault("target", "http://localhost:8080");
+        this.count = Integer.parseInt(options.getOrDefault("count", "1000"));
+        this.concurrency = Integer.parseInt(options.getOrDefault("concurrency", "1000"));
+        this.sinkPort = Integer.parseInt(options.getOrDefault("sink-port", "9098"));
+        this.timeoutSeconds = Long.parseLong(options.getOrDefault("timeout-seconds", "600"));
+        this.stage = options.getOrDefault("stage", "post_apply");
+        this.workspaces = Integer.parseInt(options.getOrDefault("workspaces", "50"));
+        this.organizations = Integer.parseInt(options.getOrDefault("organizations", "5"));
+        this.callbackDelayMs = Long.parseLong(options.getOrDefault("callback-delay-ms", "0"));
+        this.callbackFailureRate = Double.parseDouble(options.getOrDefault("callback-failure-rate", "0"));
+        this.mac = options.containsKey("hmac-key") ? mac(options.get("hmac-key")) : null;
+    }
+
+    private static Mac mac(String key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA512");
+            mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA512"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        new WebhookLoadDriver(options).run();
+    }
+
+    public void run() throws Exception {
+        StubTfeServer tfe = new StubTfeServer(sinkPort, callbackDelayMs, callbackFailureRate);
+        tfe.expectTotal(count);
+        tfe.start();
+
+        Thread sampler = new Thread(this::sample, "metrics-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        System.out.printf("Sending %d webhooks to %s (concurrency %d, stage %s)%n", count, target, concurrency, stage);
+        Semaphore inFlight = new Semaphore(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            String taskResultId = "taskrs-load-" + i;
+            HttpRequest request = webhook(i, taskResultId);
+            inFlight.acquire();
+            tfe.expect(taskResultId);
+            long sent = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                inFlight.release();
+                if (error != null) {
+                    errors.incrementAndGet();
+                    tfe.abandon(taskResultId);
+                    return;
+                }
+                acknowledgements.record(System.nanoTime() - sent);
+                if (response.statusCode() == 429) {
+                    // Only a "running" callback follows a rejection
+                    rejected.incrementAndGet();
+                    tfe.abandon(taskResultId);
+                } else if (response.statusCode() / 100 != 2) {
+                    errors.incrementAndGet();
+                    tfe.abandon(taskResultId);
+                } else {
+                    accepted.incrementAndGet();
+                }
+            });
+        }
+        inFlight.acquire(concurrency);
+        double acceptSeconds = (System.nanoTime() - start) / 1e9;
+
+        boolean completed = tfe.awaitFinals(timeoutSeconds, TimeUnit.SECONDS);
+        double totalSeconds = (System.nanoTime() - start) / 1e9;
+        tfe.close();
+
+        System.out.printf("accepted=%d rejected(429)=%d errors=%d%n", accepted.get(), rejected.get(), errors.get());
+        System.out.printf("webhooks acknowledged in %.2fs (%.0f/s)%n", acceptSeconds, count / acceptSeconds);
+        System.out.printf("acknowledgement latency: %s%n", acknowledgements.summary());
+        System.out.printf("all final callbacks received: %s after %.2fs (%.1f runs/s)%n",
+                completed, totalSeconds, tfe.getCompletion().count() / totalSeconds);
+        System.out.printf("webhook-to-final-callback latency: %s%n", tfe.getCompletion().summary());
+        System.out.printf("stub TFE: %s%n", tfe.counts());
+        System.out.printf("service peak live threads=%d, peak heap used=%.1f MiB%n",
+                peakThreads.get(), peakHeap.get() / (1024.0 * 1024.0));
+        System.exit(completed ? 0 : 1);
+    }
+
+    private HttpRequest webhook(int i, String taskResultId) throws IOException {
+        Map<String, Object> body = new HashMap<>();
+        body.put("payload_version", 1);
+        body.put("stage", stage);
+        body.put("access_token", "load-test-token");
+        body.put("task_result_id", taskResultId);
+        body.put("task_result_enforcement_level", i % 10 == 0 ? "mandatory" : "advisory");
+        body.put("task_result_callback_url", "http://127.0.0.1:" + sinkPort + "/api/v2/task-results/" + taskResultId);
+        body.put("run_id", "run-load-" + i);
+        body.put("configuration_version_id", "cv-load-" + i);
+        body.put("workspace_id", "ws-load-" + (i % workspaces));
+        body.put("workspace_name", "load-" + (i % workspaces));
+        body.put("organization_name", "load-org-" + (i % organizations));
+        byte[] json = objectMapper.writeValueAsBytes(body);
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(target + "/api/run-task"))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json));
+        if (mac != null) {
+            // Webhooks are built on the sending thread only
+            request.header("X-TFE-Task-Signature", HexFormat.of().formatHex(mac.doFinal(json)));
+        }
+        return request.build();
+    }
+
+    private void sample() {
+        while (true) {
+            try {
+                peakThreads.accumulateAndGet((int) metric("jvm.threads.live", null), Math::max);
+                peakHeap.accumulateAndGet((long) metric("jvm.memory.used", "area:heap"), Math::max);
+                Thread.sleep(250);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                // Service busy or metrics endpoint not exposed; keep trying
+            }
+        }
+    }
+
+    private double metric(String name, String tag) throws Exception {
+        String uri = target + "/actuator/metrics/" + name + (tag != null ? "?tag=" + tag : "");
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(uri)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        JsonNode measurements = objectMapper.readTree(response.body()).path("measurements");
+        return measurements.path(0).path("value").asDouble();
+    }
+}
@@ -0,0 +1,72 @@
+#!/usr/bin/env bash
+# Offline load test: builds the service, starts it on the fake runner with a
+# throwaway database and runs directory, drives it with WebhookLoadDriver
+# (which embeds the stub TFE) and stops it again.
+#
+#   src/bench/load-test.sh [service args...]
+#
+# Environment (defaults in brackets):
+#   COUNT [1000] CONCURRENCY [200] STAGE [post_apply] PORT [18080] SINK_PORT [19099]
+#   FAKE_RUNNER_SECONDS [1] FAKE_RUNNER_EVENTS [5] FAKE_RUNNER_OUTPUT_BYTES [4096]
+#   CALLBACK_DELAY_MS [0] CALLBACK_FAILURE_RATE [0] JAVA_OPTS [] PROFILES [] (e.g. -Pjava21)
+#   HMAC_KEY [] (sign webhooks and verify them in the service)
+# All webhooks come from one address, so the admission rate limits are off unless set
+# through the environment (RUNTASK_ADMISSION_SOURCE_RATE_PER_SECOND=...) or service args.
+# Example: COUNT=5000 src/bench/load-test.sh --runtask.queue.workers=64 --ansible.runner.max-processes=64
+set -euo pipefail
+
+cd "$(dirname "$0")/../.."
+COUNT=${COUNT:-1000}
+CONCURRENCY=${CONCURRENCY:-200}
+STAGE=${STAGE:-post_apply}
+PORT=${PORT:-18080}
+SINK_PORT=${SINK_PORT:-19099}
+PROFILES=${PROFILES:-}
+export FAKE_RUNNER_SECONDS=${FAKE_RUNNER_SECONDS:-1}
+export FAKE_RUNNER_EVENTS=${FAKE_RUNNER_EVENTS:-5}
+export FAKE_RUNNER_OUTPUT_BYTES=${FAKE_RUNNER_OUTPUT_BYTES:-4096}
+export RUNTASK_ADMISSION_SOURCE_RATE_PER_SECOND=${RUNTASK_ADMISSION_SOURCE_RATE_PER_SECOND:-0}
+export RUNTASK_ADMISSION_ORGANIZATION_RATE_PER_SECOND=${RUNTASK_ADMISSION_ORGANIZATION_RATE_PER_SECOND:-0}
+export RUNTASK_ADMISSION_HMAC_KEY=${HMAC_KEY:-}
+
+workdir=$(mktemp -d)
+service_pid=
+cleanup() {
+    if [ -n "$service_pid" ]; then
+        kill "$service_pid" 2>/dev/null || true
+        wait "$service_pid" 2>/dev/null || true
+    fi
+    rm -rf "$workdir"
+}
+trap cleanup EXIT
+
+mvn -B -q $PROFILES package -DskipTests
+jar=$(ls target/run-task-service-*.jar | grep -v original | head -1)
+
+echo "Starting service on port $PORT (log: $workdir/service.log)"
+PYTHONPATH="$PWD/src/bench/fake-runner" java ${JAVA_OPTS:-} -jar "$jar" \
+    --server.port="$PORT" \
+    --ansible.runner.project.path=../runner-test \
+    --ansible.runner.runs.path="$workdir/runs" \
+    --ansible.runner.python.path=python3 \
+    --spring.datasource.url="jdbc:h2:file:$workdir/runtask" \
+    --logging.level.com.terraform.runtask=WARN \
+    "$@" > "$workdir/service.log" 2>&1 &
+service_pid=$!
+
+for _ in $(seq 1 120); do
+    if curl -sf "http://localhost:$PORT/api/health" > /dev/null; then
+        break
+    fi
+    if ! kill -0 "$service_pid" 2>/dev/null; then
+        tail -50 "$workdir/service.log"
+        exit 1
+    fi
+    sleep 1
+done
+
+mvn -B -q -Pbench $PROFILES compile exec:exec \
+    -Dbench.main=com.terraform.runtask.bench.WebhookLoadDriver \
+    -Dbench.args="--target http://localhost:$PORT --sink-port $SINK_PORT --count $COUNT --concurrency $CONCURRENCY \
+--stage $STAGE --callback-delay-ms ${CALLBACK_DELAY_MS:-0} --callback-failure-rate ${CALLBACK_FAILURE_RATE:-0}\
+${HMAC_KEY:+ --hmac-key $HMAC_KEY}"
@@ -0,0 +1,100 @@
+#!/usr/bin/env bash
+# Startup benchmark: builds with -Paot and starts each variant RUNS times, measuring
+# launch until /api/health answers, Spring's own "Started ... in" time and the
+# resident set size once ready.
+#
+#   src/bench/startup-benchmark.sh
+#
+# Variants: the fat jar (target/*-exec.jar, as shipped today), the thin jar with the
+# CDS archive, and the thin jar with CDS and Spring AOT. A native executable at
+# target/run-task-service (mvn -Pnative native:compile) is measured too if present.
+#
+# Environment (defaults in brackets):
+#   RUNS [5] PORT [18081] JAVA_OPTS [] PROFILES [] (e.g. -Pjava21) SKIP_BUILD [] (reuse target/)
+set -euo pipefail
+
+cd "$(dirname "$0")/../.."
+RUNS=${RUNS:-5}
+PORT=${PORT:-18081}
+PROFILES=${PROFILES:-}
+JAVA=${JAVA_HOME:+$JAVA_HOME/bin/}java
+
+if [ -z "${SKIP_BUILD:-}" ]; then
+    mvn -B -q -Paot $PROFILES clean package -DskipTests
+fi
+fat=$PWD/$(ls target/run-task-service-*-exec.jar | head -1)
+# The archive records the class path as it was dumped, so the thin jar starts from its directory
+fast=$PWD/target/fast-startup
+thin=$(cd "$fast" && ls run-task-service-*.jar | head -1)
+
+workdir=$(mktemp -d)
+pid=
+cleanup() {
+    if [ -n "$pid" ]; then
+        kill "$pid" 2>/dev/null || true
+        wait "$pid" 2>/dev/null || true
+    fi
+    rm -rf "$workdir"
+}
+trap cleanup EXIT
+
+now_ms() {
+    date +%s%3N
+}
+
+# Prints "<ms until healthy> <ms reported by Spring> <RSS in MiB>" for one start of "$@" in $DIR
+measure() {
+    rm -rf "$workdir/run"
+    mkdir -p "$workdir/run"
+    local start
+    start=$(now_ms)
+    (cd "${DIR:-.}" && exec "$@" --server.port="$PORT" \
+        --spring.datasource.url="jdbc:h2:file:$workdir/run/runtask" \
+        --ansible.runner.runs.path="$workdir/run/runs" \
+        --logging.level.com.terraform.runtask.service=WARN) > "$workdir/run/service.log" 2>&1 &
+    pid=$!
+    until curl -sf "http://localhost:$PORT/api/health" > /dev/null; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            tail -30 "$workdir/run/service.log" >&2
+            exit 1
+        fi
+        sleep 0.02
+    done
+    local ready=$(( $(now_ms) - start ))
+    local spring
+    spring=$(sed -n 's/.*Started RunTaskServiceApplication in \([0-9.]*\) seconds.*/\1/p' "$workdir/run/service.log" \
+        | awk '{ printf "%d", $1 * 1000 }')
+    local rss
+    rss=$(awk '/VmRSS/ { printf "%d", $2 / 1024 }' "/proc/$pid/status")
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    pid=
+    echo "$ready ${spring:-0} $rss"
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { print (NR % 2) ? v[(NR + 1) / 2] : int((v[NR / 2] + v[NR / 2 + 1]) / 2) }'
+}
+
+run_variant() {
+    local name=$1
+    shift
+    local results=()
+    for _ in $(seq 1 "$RUNS"); do
+        results+=("$(measure "$@")")
+    done
+    printf '%-22s ready %6s ms   spring %6s ms   rss %5s MiB\n' "$name" \
+        "$(printf '%s\n' "${results[@]}" | cut -d' ' -f1 | median)" \
+        "$(printf '%s\n' "${results[@]}" | cut -d' ' -f2 | median)" \
+        "$(printf '%s\n' "${results[@]}" | cut -d' ' -f3 | median)"
+}
+
+echo "Median of $RUNS starts each ($($JAVA -version 2>&1 | head -1), $(nproc) CPU(s))"
+run_variant "fat jar" $JAVA ${JAVA_OPTS:-} -jar "$fat"
+DIR=$fast run_variant "thin jar" $JAVA ${JAVA_OPTS:-} -jar "$thin"
+DIR=$fast run_variant "thin jar + CDS" $JAVA ${JAVA_OPTS:-} -XX:SharedArchiveFile=run-task-service.jsa -jar "$thin"
+DIR=$fast run_variant "thin jar + CDS + AOT" $JAVA ${JAVA_OPTS:-} -XX:SharedArchiveFile=run-task-service.jsa \
+    -Dspring.aot.enabled=true -jar "$thin"
+if [ -x target/run-task-service ]; then
+    run_variant "native image" target/run-task-service
+fi
@@ -0,0 +1,80 @@
+package com.terraform.runtask.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factories for the service's own executors (queue workers, callback
+ * dispatch). With {@code spring.threads.virtual.enabled=true} on a Java 21+
+ * runtime they hand out virtual threads, the same switch Spring Boot uses for
+ * Tomcat's request threads. On Java 17 the flag is ignored and named daemon
+ * platform threads are used.
+ * <p>
+ * The service is compiled for Java 17, so the virtual thread builder is looked
+ * up reflectively.
+ */
+@Slf4j
+@Component
+public class ExecutionThreads {
+
+    private final boolean virtual;
+
+    public ExecutionThreads(@Value("${spring.threads.virtual.enabled:false}") boolean virtualRequested) {
+        boolean supported = Runtime.version().feature() >= 21;
+        if (virtualRequested && !supported) {
+            log.warn("spring.threads.virtual.enabled=true requires Java 21+, running on {}; using platform threads",
+                    Runtime.version());
+        }
+        this.virtual = virtualRequested && supported;
+        log.info("Execution threads: {}", virtual ? "virtual" : "platform");
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public ThreadFactory factory(String name) {
+        if (virtual) {
+            return virtualFactory(name);
+        }
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Executor for short, independent tasks: thread-per-task when virtual,
+     * otherwise a fixed pool of {@code platformThreads}.
+     */
+    public ExecutorService newTaskExecutor(String name, int platformThreads) {
+        if (!virtual) {
+            return Executors.newFixedThreadPool(platformThreads, factory(name));
+        }
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, virtualFactory(name));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads unavailable", e);
+        }
+    }
+
+    private static ThreadFactory virtualFactory(String name) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads unavailable", e);
+        }
+    }
+}
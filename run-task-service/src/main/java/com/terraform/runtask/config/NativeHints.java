@@ -0,0 +1,71 @@
+package com.terraform.runtask.config;
+
+import com.terraform.runtask.model.PendingCallback;
+import com.terraform.runtask.model.PlaybookSummary;
+import com.terraform.runtask.model.RoutingRule;
+import com.terraform.runtask.model.RunHistoryPage;
+import com.terraform.runtask.model.RunQueueEntry;
+import com.terraform.runtask.model.RunRecord;
+import com.terraform.runtask.model.TerraformCallback;
+import com.terraform.runtask.model.TerraformWebhook;
+import com.terraform.runtask.service.PlaybookRoute;
+import org.springframework.aot.hint.ExecutableMode;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reflection and resource hints for ahead-of-time builds ({@code -Paot},
+ * {@code -Pnative}). The models are bound by Jackson through their
+ * Lombok-generated constructors and accessors, also outside of controller
+ * signatures: the job store, outbox, routing file and history all read and
+ * write them directly, so Spring cannot infer them. Nested types
+ * ({@code TerraformCallback.CallbackData}, {@code PlaybookSummary.HostStats},
+ * ...) are registered with their enclosing model. The JDBC job store writes
+ * each run's {@link PlaybookRoute} next to its webhook.
+ * <p>
+ * {@link ExecutionThreads} looks up the virtual thread API reflectively, and
+ * {@link com.terraform.runtask.service.WarmRunnerPool} ships its Python worker
+ * as a classpath resource.
+ */
+@Configuration(proxyBeanMethods = false)
+@ImportRuntimeHints(NativeHints.Registrar.class)
+@RegisterReflectionForBinding({
+        TerraformWebhook.class,
+        TerraformCallback.class,
+        PendingCallback.class,
+        RoutingRule.class,
+        PlaybookSummary.class,
+        RunRecord.class,
+        RunHistoryPage.class,
+        RunQueueEntry.class,
+        PlaybookRoute.class
+})
+public class NativeHints {
+
+    static class Registrar implements RuntimeHintsRegistrar {
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            hints.resources().registerPattern("runner/runner_worker.py");
+
+            TypeReference threadBuilder = TypeReference.of("java.lang.Thread$Builder");
+            hints.reflection().registerType(Thread.class, type -> type
+                    .withMethod("ofVirtual", List.of(), ExecutableMode.INVOKE));
+            hints.reflection().registerType(threadBuilder, type -> type
+                    .withMethod("name", List.of(TypeReference.of(String.class), TypeReference.of(long.class)),
+                            ExecutableMode.INVOKE)
+                    .withMethod("factory", List.of(), ExecutableMode.INVOKE));
+            hints.reflection().registerType(Executors.class, type -> type
+                    .withMethod("newThreadPerTaskExecutor", List.of(TypeReference.of(ThreadFactory.class)),
+                            ExecutableMode.INVOKE));
+        }
+    }
+}
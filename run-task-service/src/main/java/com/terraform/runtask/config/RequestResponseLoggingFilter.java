@@ -1,98 +1,353 @@
 package com.terraform.runtask.config;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.web.util.ContentCachingRequestWrapper;
-import org.springframework.web.util.ContentCachingResponseWrapper;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
+/**
+ * Writes one structured JSON access event per exchange to the
+ * {@code runtask.access} logger (async appender, see {@code logback-spring.xml}).
+ * <p>
+ * Successful exchanges are sampled at {@code sample-rate}; errors are always
+ * logged. Headers and bodies are only captured for a sampled fraction of
+ * requests ({@code body-sample-rate}) or when the access logger is at DEBUG, and
+ * then only up to {@code max-body-bytes} as the application reads and writes
+ * them. Otherwise the request and response pass through unwrapped. Secret
+ * headers and JSON fields are redacted before anything is logged.
+ */
 @Slf4j
 @Component
 public class RequestResponseLoggingFilter implements Filter {
 
+    private static final Logger accessLog = LoggerFactory.getLogger("runtask.access");
+
+    private final JsonFactory jsonFactory;
+    private final List<String> paths;
+    private final double sampleRate;
+    private final double bodySampleRate;
+    private final int maxBodyBytes;
+    private final Set<String> redactHeaders;
+    private final List<Pattern> redactFields;
+
+    public RequestResponseLoggingFilter(
+            ObjectMapper objectMapper,
+            @Value("${runtask.access-log.paths:/api/run-task}") String paths,
+            @Value("${runtask.access-log.sample-rate:1.0}") double sampleRate,
+            @Value("${runtask.access-log.body-sample-rate:0.0}") double bodySampleRate,
+            @Value("${runtask.access-log.max-body-bytes:4096}") int maxBodyBytes,
+            @Value("${runtask.access-log.redact-headers:authorization,cookie,x-tfe-task-signature}") String redactHeaders,
+            @Value("${runtask.access-log.redact-fields:access_token}") String redactFields) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.paths = split(paths);
+        this.sampleRate = sampleRate;
+        this.bodySampleRate = bodySampleRate;
+        this.maxBodyBytes = maxBodyBytes;
+        this.redactHeaders = split(redactHeaders).stream()
+                .map(h -> h.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+        // A capture cut off inside a value still has that value redacted up to where it ends
+        this.redactFields = split(redactFields).stream()
+                .map(f -> Pattern.compile("(\"" + Pattern.quote(f) + "\"\\s*:\\s*\")(?:[^\"\\\\]|\\\\.)*\\\\?(\"|$)"))
+                .collect(Collectors.toUnmodifiableList());
+    }
+
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
             throws IOException, ServletException {
-        
+
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
 
-        // Only log /api/run-task endpoints
-        if (!httpRequest.getRequestURI().contains("/api/run-task")) {
+        if (!accessLog.isInfoEnabled() || !matches(httpRequest.getRequestURI())) {
             chain.doFilter(request, response);
             return;
         }
 
-        ContentCachingRequestWrapper requestWrapper = new ContentCachingRequestWrapper(httpRequest);
-        ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(httpResponse);
+        boolean capture = accessLog.isDebugEnabled() || sampled(bodySampleRate);
+        CapturingRequest capturingRequest = capture ? new CapturingRequest(httpRequest, maxBodyBytes) : null;
+        CapturingResponse capturingResponse = capture ? new CapturingResponse(httpResponse, maxBodyBytes) : null;
 
-        long startTime = System.currentTimeMillis();
+        long startTime = System.nanoTime();
 
         try {
-            chain.doFilter(requestWrapper, responseWrapper);
+            chain.doFilter(capture ? capturingRequest : request, capture ? capturingResponse : response);
         } finally {
-            long duration = System.currentTimeMillis() - startTime;
-            
-            logRequest(requestWrapper, duration);
-            logResponse(responseWrapper, duration);
+            if (capturingResponse != null) {
+                capturingResponse.flushWriter();
+            }
+            long durationMicros = (System.nanoTime() - startTime) / 1000;
+            int status = httpResponse.getStatus();
+            if (capture || status >= 400 || sampled(sampleRate)) {
+                try {
+                    accessLog.info(event(httpRequest, status, durationMicros, capturingRequest, capturingResponse));
+                } catch (Exception e) {
+                    log.error("Error writing access log event", e);
+                }
+            }
+        }
+    }
 
-            responseWrapper.copyBodyToResponse();
+    private String event(HttpServletRequest request, int status, long durationMicros,
+                         CapturingRequest capturedRequest, CapturingResponse capturedResponse) throws IOException {
+        StringWriter out = new StringWriter(256);
+        try (JsonGenerator gen = jsonFactory.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeStringField("method", request.getMethod());
+            gen.writeStringField("uri", request.getRequestURI());
+            gen.writeNumberField("status", status);
+            gen.writeNumberField("duration_ms", durationMicros / 1000.0);
+            gen.writeStringField("remote", request.getRemoteAddr());
+            gen.writeNumberField("request_bytes", request.getContentLengthLong());
+            if (capturedRequest != null) {
+                gen.writeObjectFieldStart("request_headers");
+                for (String name : Collections.list(request.getHeaderNames())) {
+                    gen.writeStringField(name, redactHeader(name, request.getHeader(name)));
+                }
+                gen.writeEndObject();
+                writeBody(gen, "request_body", capturedRequest.capture, request.getCharacterEncoding());
+            }
+            if (capturedResponse != null) {
+                gen.writeNumberField("response_bytes", capturedResponse.capture.total);
+                writeBody(gen, "response_body", capturedResponse.capture, capturedResponse.getCharacterEncoding());
+            }
+            gen.writeEndObject();
         }
+        return out.toString();
     }
 
-    private void logRequest(ContentCachingRequestWrapper request, long duration) {
+    private void writeBody(JsonGenerator gen, String field, CappedCapture capture, String encoding) throws IOException {
+        if (capture.total == 0) {
+            return;
+        }
+        gen.writeStringField(field, redactBody(capture.toString(charset(encoding))));
+        if (capture.isTruncated()) {
+            gen.writeBooleanField(field + "_truncated", true);
+        }
+    }
+
+    private String redactHeader(String name, String value) {
+        return redactHeaders.contains(name.toLowerCase(Locale.ROOT)) ? "***" : value;
+    }
+
+    private String redactBody(String body) {
+        for (Pattern field : redactFields) {
+            body = field.matcher(body).replaceAll("$1***$2");
+        }
+        return body;
+    }
+
+    private boolean matches(String uri) {
+        for (String path : paths) {
+            if (uri.startsWith(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean sampled(double rate) {
+        return rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    private static Charset charset(String encoding) {
         try {
-            log.info("╔═══════════════════════════════════════════════════════════");
-            log.info("║ INCOMING REQUEST FROM TFE");
-            log.info("╠═══════════════════════════════════════════════════════════");
-            log.info("║ Method: {} {}", request.getMethod(), request.getRequestURI());
-            log.info("║ Remote Address: {}", request.getRemoteAddr());
-            log.info("║ Headers:");
-            
-            var headerNames = request.getHeaderNames();
-            while (headerNames.hasMoreElements()) {
-                String headerName = headerNames.nextElement();
-                log.info("║   {}: {}", headerName, request.getHeader(headerName));
+            return encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+        } catch (Exception e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static List<String> split(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /** Keeps the first {@code limit} bytes seen and counts the rest. */
+    private static final class CappedCapture {
+        private final ByteArrayOutputStream bytes;
+        private final int limit;
+        private long total;
+
+        private CappedCapture(int limit) {
+            this.limit = limit;
+            this.bytes = new ByteArrayOutputStream(Math.min(limit, 1024));
+        }
+
+        private void write(int b) {
+            if (total++ < limit) {
+                bytes.write(b);
             }
-            
-            byte[] content = request.getContentAsByteArray();
-            if (content.length > 0) {
-                String body = new String(content, StandardCharsets.UTF_8);
-                log.info("║ Body:");
-                log.info("║ {}", body);
+        }
+
+        private void write(byte[] b, int off, int len) {
+            if (len > 0 && total < limit) {
+                bytes.write(b, off, (int) Math.min(len, limit - total));
             }
-            log.info("╚═══════════════════════════════════════════════════════════");
-        } catch (Exception e) {
-            log.error("Error logging request", e);
+            total += Math.max(len, 0);
+        }
+
+        private boolean isTruncated() {
+            return total > limit;
+        }
+
+        private String toString(Charset charset) {
+            return bytes.toString(charset);
         }
     }
 
-    private void logResponse(ContentCachingResponseWrapper response, long duration) {
-        try {
-            log.info("╔═══════════════════════════════════════════════════════════");
-            log.info("║ OUTGOING RESPONSE TO TFE (duration: {}ms)", duration);
-            log.info("╠═══════════════════════════════════════════════════════════");
-            log.info("║ Status: {}", response.getStatus());
-            log.info("║ Headers:");
-            
-            for (String headerName : response.getHeaderNames()) {
-                log.info("║   {}: {}", headerName, response.getHeader(headerName));
+    private static final class CapturingRequest extends HttpServletRequestWrapper {
+        private final CappedCapture capture;
+        private ServletInputStream inputStream;
+        private BufferedReader reader;
+
+        private CapturingRequest(HttpServletRequest request, int limit) {
+            super(request);
+            this.capture = new CappedCapture(limit);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                ServletInputStream delegate = super.getInputStream();
+                inputStream = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        int b = delegate.read();
+                        if (b >= 0) {
+                            capture.write(b);
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int n = delegate.read(b, off, len);
+                        capture.write(b, off, n);
+                        return n;
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return delegate.isFinished();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener listener) {
+                        delegate.setReadListener(listener);
+                    }
+                };
             }
-            
-            byte[] content = response.getContentAsByteArray();
-            if (content.length > 0) {
-                String body = new String(content, StandardCharsets.UTF_8);
-                log.info("║ Body:");
-                log.info("║ {}", body);
+            return inputStream;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            if (reader == null) {
+                reader = new BufferedReader(new InputStreamReader(getInputStream(), charset(getCharacterEncoding())));
+            }
+            return reader;
+        }
+    }
+
+    private static final class CapturingResponse extends HttpServletResponseWrapper {
+        private final CappedCapture capture;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        private CapturingResponse(HttpServletResponse response, int limit) {
+            super(response);
+            this.capture = new CappedCapture(limit);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                        capture.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        delegate.write(b, off, len);
+                        capture.write(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        delegate.setWriteListener(listener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), charset(getCharacterEncoding())));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            flushWriter();
+            super.flushBuffer();
+        }
+
+        private void flushWriter() {
+            if (writer != null) {
+                writer.flush();
             }
-            log.info("╚═══════════════════════════════════════════════════════════");
-        } catch (Exception e) {
-            log.error("Error logging response", e);
         }
     }
-}
\ No newline at end of file
+}
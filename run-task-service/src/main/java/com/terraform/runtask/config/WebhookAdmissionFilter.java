@@ -0,0 +1,503 @@
+package com.terraform.runtask.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.service.RunLinkSigner;
+import com.terraform.runtask.service.RunTaskMetrics;
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Admission control for webhook POSTs, ahead of every other filter, the
+ * access log and Jackson binding. In order, each check cheaper than the next:
+ * <ol>
+ *   <li>a token bucket per source address ({@code runtask.admission.source.*});</li>
+ *   <li>the body size: {@code Content-Length} first, then the bytes actually
+ *       read, capped at {@code max-body-bytes};</li>
+ *   <li>TFE's {@code X-TFE-Task-Signature}, an HMAC-SHA512 of the raw body
+ *       keyed with the run task's HMAC key, when {@code hmac-key} is set;</li>
+ *   <li>a token bucket per organization ({@code runtask.admission.organization.*}),
+ *       keyed on {@code organization_name} read by a streaming scan.</li>
+ * </ol>
+ * Rejections are answered directly ({@code 429}, {@code 413}, {@code 401})
+ * and never reach the rest of the chain. Admitted requests continue with the
+ * body already buffered, so it is read from the socket exactly once. Paths are
+ * matched as Spring MVC routes them, decoded and without {@code ;} parameters,
+ * so {@code /api/run-task;x=1} or {@code /api/run%2Dtask} are guarded too.
+ * <p>
+ * Cancel requests ({@code POST /api/runs/{runId}/cancel}) go through the
+ * source bucket and must carry {@code Authorization: Bearer} with
+ * {@code runtask.admission.cancel-token}. Without a token configured,
+ * cancellation over HTTP is disabled ({@code 403}).
+ * <p>
+ * Reads of run data ({@code GET /api/runs/{runId}/output} and {@code /events},
+ * {@code /api/history}, {@code /api/queue}) need the read token or, for one
+ * run's output and events, a link signed by {@link RunLinkSigner}.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class WebhookAdmissionFilter implements Filter {
+
+    private static final String SIGNATURE_HEADER = "X-TFE-Task-Signature";
+    private static final String ALGORITHM = "HmacSHA512";
+    private static final String RUNS_PREFIX = "/api/runs/";
+    private static final String CANCEL_PREFIX = RUNS_PREFIX;
+    private static final Set<String> LINKED_ENDPOINTS = Set.of("/output", "/events");
+    private static final String HISTORY_PATH = "/api/history";
+    private static final String QUEUE_PATH = "/api/queue";
+    private static final String CANCEL_SUFFIX = "/cancel";
+    private static final String BEARER = "Bearer ";
+
+    private final JsonFactory jsonFactory;
+    private final RunTaskMetrics metrics;
+    private final RunLinkSigner linkSigner;
+    private final List<String> paths;
+    private final int maxBodyBytes;
+    private final boolean trustForwardedFor;
+    private final int maxTrackedKeys;
+    private final SecretKeySpec hmacKey;
+    /** Initialized Macs; pooled rather than per thread, since virtual threads never reuse one. */
+    private final BlockingQueue<Mac> macs;
+    private final byte[] cancelToken;
+    private final BucketLimit sourceLimit;
+    private final BucketLimit organizationLimit;
+    private final BucketTable sourceBuckets = new BucketTable();
+    private final BucketTable organizationBuckets = new BucketTable();
+
+    public WebhookAdmissionFilter(
+            ObjectMapper objectMapper,
+            RunTaskMetrics metrics,
+            RunLinkSigner linkSigner,
+            @Value("${runtask.admission.paths:/api/run-task}") String paths,
+            @Value("${runtask.admission.hmac-key:}") String hmacKey,
+            @Value("${runtask.admission.cancel-token:}") String cancelToken,
+            @Value("${runtask.admission.max-body-bytes:65536}") int maxBodyBytes,
+            @Value("${runtask.admission.source.rate-per-second:100}") double sourceRate,
+            @Value("${runtask.admission.source.burst:200}") int sourceBurst,
+            @Value("${runtask.admission.organization.rate-per-second:20}") double organizationRate,
+            @Value("${runtask.admission.organization.burst:100}") int organizationBurst,
+            @Value("${runtask.admission.trust-forwarded-for:false}") boolean trustForwardedFor,
+            @Value("${runtask.admission.max-tracked-keys:10000}") int maxTrackedKeys) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.metrics = metrics;
+        this.linkSigner = linkSigner;
+        this.paths = Arrays.stream(paths.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toList());
+        this.maxBodyBytes = maxBodyBytes;
+        this.trustForwardedFor = trustForwardedFor;
+        this.maxTrackedKeys = maxTrackedKeys;
+        this.sourceLimit = new BucketLimit(sourceRate, sourceBurst);
+        this.organizationLimit = new BucketLimit(organizationRate, organizationBurst);
+        if (hmacKey.isEmpty()) {
+            log.warn("runtask.admission.hmac-key is not set, webhook signatures are not verified");
+            this.hmacKey = null;
+            this.macs = null;
+        } else {
+            this.hmacKey = new SecretKeySpec(hmacKey.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+            this.macs = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+            macs.offer(newMac());
+        }
+        if (cancelToken.isEmpty()) {
+            log.info("runtask.admission.cancel-token is not set, the cancel endpoint is disabled");
+            this.cancelToken = null;
+        } else {
+            this.cancelToken = cancelToken.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        // The path Spring MVC routes on: decoded, without ;parameters, relative to the context
+        String path = UrlPathHelper.defaultInstance.getPathWithinApplication(httpRequest);
+        if (!"POST".equals(httpRequest.getMethod())) {
+            if (isReadPath(path)) {
+                admitRead(path, httpRequest, httpResponse, chain);
+            } else {
+                chain.doFilter(request, response);
+            }
+            return;
+        }
+        if (path.startsWith(CANCEL_PREFIX) && path.endsWith(CANCEL_SUFFIX)) {
+            admitCancel(httpRequest, httpResponse, chain);
+            return;
+        }
+        if (!matches(path)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String source = source(httpRequest);
+        if (!acquire(sourceBuckets, source, sourceLimit)) {
+            reject(httpResponse, 429, "rate_source", "Too many webhooks from " + source, sourceLimit);
+            return;
+        }
+
+        long declared = httpRequest.getContentLengthLong();
+        if (declared > maxBodyBytes) {
+            reject(httpResponse, 413, "too_large", "Webhook body exceeds " + maxBodyBytes + " bytes", null);
+            return;
+        }
+        byte[] body = httpRequest.getInputStream().readNBytes(maxBodyBytes + 1);
+        if (body.length > maxBodyBytes) {
+            reject(httpResponse, 413, "too_large", "Webhook body exceeds " + maxBodyBytes + " bytes", null);
+            return;
+        }
+
+        if (macs != null && !signatureValid(httpRequest.getHeader(SIGNATURE_HEADER), body)) {
+            reject(httpResponse, 401, "signature", "Missing or invalid " + SIGNATURE_HEADER, null);
+            return;
+        }
+
+        String organization = organization(body);
+        if (organization != null && !acquire(organizationBuckets, organization, organizationLimit)) {
+            reject(httpResponse, 429, "rate_organization", "Too many webhooks for this organization",
+                    organizationLimit);
+            return;
+        }
+
+        chain.doFilter(new BufferedRequest(httpRequest, body), response);
+    }
+
+    private void admitCancel(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        String source = source(request);
+        if (!acquire(sourceBuckets, source, sourceLimit)) {
+            reject(response, 429, "rate_source", "Too many requests from " + source, sourceLimit);
+            return;
+        }
+        if (cancelToken == null) {
+            reject(response, 403, "cancel_disabled", "Cancellation is disabled, runtask.admission.cancel-token is not set",
+                    null);
+            return;
+        }
+        String authorization = request.getHeader("Authorization");
+        if (authorization == null || !authorization.startsWith(BEARER) || !MessageDigest.isEqual(cancelToken,
+                authorization.substring(BEARER.length()).trim().getBytes(StandardCharsets.UTF_8))) {
+            reject(response, 401, "cancel_token", "Missing or invalid bearer token", null);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private void admitRead(String path, HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!linkSigner.isEnabled()) {
+            reject(response, 403, "read_disabled", "Run data is not served, runtask.read-access.token is not set", null);
+            return;
+        }
+        String authorization = request.getHeader("Authorization");
+        if (authorization != null && authorization.startsWith(BEARER)
+                && linkSigner.isValidToken(authorization.substring(BEARER.length()).trim())) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String runId = linkedRunId(path);
+        if (runId != null && linkSigner.verify(runId, request.getParameter("stage"),
+                request.getParameter("expires"), request.getParameter("signature"))) {
+            chain.doFilter(request, response);
+            return;
+        }
+        reject(response, 401, "read_token", "Missing or invalid bearer token or link signature", null);
+    }
+
+    private static boolean isReadPath(String path) {
+        return path.equals(HISTORY_PATH) || path.startsWith(HISTORY_PATH + "/") || path.equals(QUEUE_PATH)
+                || linkedRunId(path) != null;
+    }
+
+    /**
+     * The run ID of {@code /api/runs/{runId}/output} or {@code /events}, the
+     * endpoints a signed link opens; {@code null} for any other path.
+     */
+    private static String linkedRunId(String path) {
+        if (!path.startsWith(RUNS_PREFIX)) {
+            return null;
+        }
+        int slash = path.indexOf('/', RUNS_PREFIX.length());
+        if (slash <= RUNS_PREFIX.length() || !LINKED_ENDPOINTS.contains(path.substring(slash))) {
+            return null;
+        }
+        return path.substring(RUNS_PREFIX.length(), slash);
+    }
+
+    private boolean signatureValid(String signature, byte[] body) {
+        if (signature == null || signature.isEmpty()) {
+            return false;
+        }
+        byte[] expected;
+        try {
+            expected = HexFormat.of().parseHex(signature.trim());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        Mac mac = macs.poll();
+        if (mac == null) {
+            mac = newMac();
+        }
+        // doFinal resets the Mac, ready for the next request
+        boolean valid = MessageDigest.isEqual(expected, mac.doFinal(body));
+        macs.offer(mac);
+        return valid;
+    }
+
+    /**
+     * {@code organization_name} from the top level of the payload, without
+     * binding it. {@code null} if absent or the body is not JSON; binding then
+     * reports the problem.
+     */
+    private String organization(byte[] body) {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("organization_name".equals(field)) {
+                    return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private boolean acquire(BucketTable table, String key, BucketLimit limit) {
+        if (limit.ratePerSecond <= 0) {
+            return true;
+        }
+        TokenBucket bucket = table.buckets.get(key);
+        if (bucket == null) {
+            if (table.buckets.size() >= maxTrackedKeys && !table.sweep(limit, maxTrackedKeys)) {
+                // Full and swept recently: refuse new keys until the next sweep makes room
+                return false;
+            }
+            bucket = table.buckets.computeIfAbsent(key, k -> new TokenBucket(limit));
+        }
+        return bucket.tryAcquire(limit);
+    }
+
+    private void reject(HttpServletResponse response, int status, String reason, String message, BucketLimit limit)
+            throws IOException {
+        metrics.admissionRejected(reason);
+        log.debug("Webhook rejected with {}: {}", status, message);
+        response.setStatus(status);
+        if (limit != null) {
+            response.setHeader("Retry-After", String.valueOf((long) Math.ceil(1 / limit.ratePerSecond)));
+        }
+        response.setContentType("application/json");
+        byte[] json = ("{\"status\":\"rejected\",\"message\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"")
+                + "\"}").getBytes(StandardCharsets.UTF_8);
+        response.setContentLength(json.length);
+        response.getOutputStream().write(json);
+    }
+
+    private String source(HttpServletRequest request) {
+        if (trustForwardedFor) {
+            String forwarded = request.getHeader("X-Forwarded-For");
+            if (forwarded != null && !forwarded.isBlank()) {
+                int comma = forwarded.indexOf(',');
+                return (comma < 0 ? forwarded : forwarded.substring(0, comma)).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private boolean matches(String path) {
+        for (String guarded : paths) {
+            if (path.equals(guarded)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(hmacKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+        }
+    }
+
+    private record BucketLimit(double ratePerSecond, int burst) {
+    }
+
+    /**
+     * Buckets of one kind, at most {@code max-tracked-keys} of them. Once full,
+     * a new key triggers a sweep, at most once per {@link #SWEEP_INTERVAL_NANOS}:
+     * idle buckets that have refilled are dropped, which changes nothing, then
+     * the least recently used ones until a tenth of the table is free.
+     */
+    private static final class BucketTable {
+        private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+        private final AtomicLong lastSweep = new AtomicLong(System.nanoTime() - SWEEP_INTERVAL_NANOS);
+
+        /** @return whether this call swept; {@code false} if another sweep ran recently */
+        private boolean sweep(BucketLimit limit, int maxKeys) {
+            long now = System.nanoTime();
+            long last = lastSweep.get();
+            if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) {
+                return false;
+            }
+            buckets.values().removeIf(bucket -> bucket.isFull(limit, now));
+            int excess = buckets.size() - (maxKeys - Math.max(1, maxKeys / 10));
+            if (excess > 0) {
+                // Snapshot the use times: sorting on values other threads keep updating is unsound
+                buckets.entrySet().stream()
+                        .map(entry -> Map.entry(entry.getKey(), entry.getValue().usedAt))
+                        .sorted(Map.Entry.comparingByValue())
+                        .limit(excess)
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toList())
+                        .forEach(buckets::remove);
+            }
+            return true;
+        }
+    }
+
+    /** Refills continuously at the limit's rate, up to its burst. */
+    private static final class TokenBucket {
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+        private volatile long usedAt = refilledAt;
+
+        private TokenBucket(BucketLimit limit) {
+            this.tokens = limit.burst;
+        }
+
+        private synchronized boolean tryAcquire(BucketLimit limit) {
+            long now = System.nanoTime();
+            usedAt = now;
+            refill(limit, now);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        private synchronized boolean isFull(BucketLimit limit, long now) {
+            refill(limit, now);
+            return tokens >= limit.burst;
+        }
+
+        private void refill(BucketLimit limit, long now) {
+            tokens = Math.min(limit.burst, tokens + (now - refilledAt) / (double) TimeUnit.SECONDS.toNanos(1)
+                    * limit.ratePerSecond);
+            refilledAt = now;
+        }
+    }
+
+    /** Serves the already-read body to the rest of the chain. */
+    private static final class BufferedRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+        private ServletInputStream inputStream;
+        private BufferedReader reader;
+
+        private BufferedRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            if (inputStream == null) {
+                ByteArrayInputStream in = new ByteArrayInputStream(body);
+                inputStream = new ServletInputStream() {
+                    @Override
+                    public int read() {
+                        return in.read();
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) {
+                        return in.read(b, off, len);
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return in.available() == 0;
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener listener) {
+                        throw new UnsupportedOperationException("Body is already buffered");
+                    }
+                };
+            }
+            return inputStream;
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            if (reader == null) {
+                String encoding = getCharacterEncoding();
+                reader = new BufferedReader(new InputStreamReader(getInputStream(),
+                        encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+            }
+            return reader;
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.terraform.runtask.controller;
+
+import com.terraform.runtask.model.RunHistoryPage;
+import com.terraform.runtask.model.RunRecord;
+import com.terraform.runtask.service.RunHistoryStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/history")
+@RequiredArgsConstructor
+public class RunHistoryController {
+
+    private static final int MAX_LIMIT = 500;
+
+    private final RunHistoryStore historyStore;
+
+    /**
+     * Lists executed task results, newest first. {@code from} and {@code to}
+     * are ISO-8601 instants bounding the finish time.
+     */
+    @GetMapping
+    public ResponseEntity<RunHistoryPage> list(
+            @RequestParam(required = false) String organization,
+            @RequestParam(required = false) String workspace,
+            @RequestParam(required = false) String stage,
+            @RequestParam(required = false) String result,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_LIMIT);
+        }
+        try {
+            return ResponseEntity.ok(historyStore.list(organization, workspace, stage, result, from, to, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @GetMapping("/runs/{runId}")
+    public ResponseEntity<List<RunRecord>> run(@PathVariable String runId) {
+        List<RunRecord> records = historyStore.findByRunId(runId);
+        if (records.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No history for run " + runId);
+        }
+        return ResponseEntity.ok(records);
+    }
+}
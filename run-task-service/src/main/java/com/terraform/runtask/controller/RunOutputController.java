@@ -0,0 +1,338 @@
+package com.terraform.runtask.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.model.RunRecord;
+import com.terraform.runtask.service.RunHistoryStore;
+import com.terraform.runtask.service.RunWorkspace;
+import com.terraform.runtask.service.RunWorkspaceManager;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Serves a run's ansible-runner output over HTTP, so the callback can link to it.
+ * <p>
+ * The text output is the {@code stdout} field of the run's job events, in
+ * event order. Once a run has finished it is rendered once into
+ * {@link RunWorkspace#getOutputFile()} and served straight from disk: through
+ * Tomcat's sendfile when the connector supports it, otherwise with
+ * {@link FileChannel#transferTo}. Single byte ranges are honoured. While a run
+ * is still executing, {@code output} renders events as they are written, as a
+ * chunked tail until the run completes ({@code ?follow=false} returns the
+ * current snapshot instead). Event files are streamed one at a time, so the
+ * heap holds one event, whatever the output size.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/runs")
+public class RunOutputController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final JsonFactory jsonFactory;
+    private final RunWorkspaceManager workspaceManager;
+    private final RunHistoryStore historyStore;
+    private final Semaphore tails;
+    private final long tailPollMs;
+    private final long tailTimeoutMs;
+
+    public RunOutputController(
+            ObjectMapper objectMapper,
+            RunWorkspaceManager workspaceManager,
+            RunHistoryStore historyStore,
+            @Value("${runtask.output.max-tails:16}") int maxTails,
+            @Value("${runtask.output.tail-poll-ms:500}") long tailPollMs,
+            @Value("${runtask.output.tail-timeout-ms:3600000}") long tailTimeoutMs) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.workspaceManager = workspaceManager;
+        this.historyStore = historyStore;
+        this.tails = new Semaphore(maxTails);
+        this.tailPollMs = tailPollMs;
+        this.tailTimeoutMs = tailTimeoutMs;
+    }
+
+    @GetMapping("/{runId}/output")
+    public void output(@PathVariable String runId,
+                       @RequestParam(required = false) String stage,
+                       @RequestParam(defaultValue = "true") boolean follow,
+                       HttpServletRequest request,
+                       HttpServletResponse response) throws IOException {
+        RunWorkspace workspace = find(runId, stage);
+        boolean active = workspaceManager.isActive(workspace);
+        if (!active && !Files.isDirectory(workspace.getJobEventsDir())) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No output recorded for run " + runId);
+        }
+        response.setContentType("text/plain;charset=UTF-8");
+        if (active) {
+            if (follow) {
+                tail(workspace, response);
+            } else {
+                OutputStream out = response.getOutputStream();
+                for (Path file : eventFiles(workspace.getJobEventsDir())) {
+                    writeStdout(file, out);
+                }
+            }
+            return;
+        }
+        serveFile(render(workspace), request, response);
+    }
+
+    /**
+     * The run's job events as newline-delimited JSON, in event order.
+     */
+    @GetMapping("/{runId}/events")
+    public void events(@PathVariable String runId,
+                       @RequestParam(required = false) String stage,
+                       HttpServletResponse response) throws IOException {
+        RunWorkspace workspace = find(runId, stage);
+        Path eventsDir = workspace.getJobEventsDir();
+        if (!Files.isDirectory(eventsDir)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No events recorded for run " + runId);
+        }
+        List<Path> files = eventFiles(eventsDir);
+        response.setContentType("application/x-ndjson");
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        for (Path file : files) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                transfer(channel, 0, channel.size(), target);
+            }
+            out.write(NEWLINE);
+        }
+    }
+
+    /**
+     * A run being executed here, otherwise the run directory its latest
+     * history row refers to. The run ID is never used as a path itself.
+     */
+    private RunWorkspace find(String runId, String stage) {
+        return workspaceManager.findActive(runId, stage)
+                .or(() -> historyStore.findByRunId(runId).stream()
+                        .filter(record -> stage == null || stage.equals(record.getStage()))
+                        .map(RunRecord::getIdent)
+                        .filter(Objects::nonNull)
+                        .findFirst()
+                        .flatMap(workspaceManager::open))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown run " + runId));
+    }
+
+    private void serveFile(Path file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = Files.size(file);
+        long start = 0;
+        long end = length;
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            // Multiple ranges are legal to ignore; the full body is sent instead
+            if (ranges.size() == 1) {
+                try {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length) + 1;
+                } catch (IllegalArgumentException e) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                if (start >= end) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+        }
+
+        response.setContentLengthLong(end - start);
+        if ("HEAD".equals(request.getMethod()) || end == start) {
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat writes the region with sendfile(2) after the handler returns
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            transfer(channel, start, end - start, Channels.newChannel(response.getOutputStream()));
+        }
+    }
+
+    /**
+     * Renders events as they are written until the run completes. Events are
+     * written in counter order, waiting for a missing counter while the run
+     * executes. The status check happens before each listing, so the last pass
+     * after completion picks up everything the runner wrote.
+     */
+    private void tail(RunWorkspace workspace, HttpServletResponse response) throws IOException {
+        if (!tails.tryAcquire()) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many live output streams");
+        }
+        try {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+            response.setHeader("X-Content-Type-Options", "nosniff");
+            OutputStream out = response.getOutputStream();
+            // Commit the response so clients see headers before the first output
+            response.flushBuffer();
+            long written = 0;
+            long deadline = System.currentTimeMillis() + tailTimeoutMs;
+            while (true) {
+                boolean finished = !workspaceManager.isActive(workspace);
+                for (Path file : eventFiles(workspace.getJobEventsDir())) {
+                    long counter = eventCounter(file);
+                    if (counter <= written) {
+                        continue;
+                    }
+                    if (counter != written + 1 && !finished) {
+                        break;
+                    }
+                    writeStdout(file, out);
+                    written = counter;
+                }
+                out.flush();
+                if (finished || System.currentTimeMillis() > deadline) {
+                    return;
+                }
+                Thread.sleep(tailPollMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.debug("Output stream for {} closed: {}", workspace.getIdent(), e.getMessage());
+        } finally {
+            tails.release();
+        }
+    }
+
+    /**
+     * The output file of a finished run, rendered from its events on first use.
+     * Concurrent requests may render it twice; each writes its own temporary
+     * file and the move is atomic.
+     */
+    private Path render(RunWorkspace workspace) throws IOException {
+        Path output = workspace.getOutputFile();
+        if (Files.isRegularFile(output)) {
+            return output;
+        }
+        Path partial = Files.createTempFile(workspace.getPrivateDataDir(), "output", ".partial");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial))) {
+                for (Path file : eventFiles(workspace.getJobEventsDir())) {
+                    writeStdout(file, out);
+                }
+            }
+            Files.move(partial, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+        return output;
+    }
+
+    /**
+     * Writes the top-level {@code stdout} field of one event file, followed by
+     * a newline unless it is empty.
+     */
+    private void writeStdout(Path file, OutputStream out) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(file.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("stdout".equals(field)) {
+                    if (value == JsonToken.VALUE_STRING && parser.getTextLength() > 0) {
+                        out.write(parser.getText().getBytes(StandardCharsets.UTF_8));
+                        out.write(NEWLINE);
+                    }
+                    return;
+                }
+                parser.skipChildren();
+            }
+        } catch (JsonProcessingException | NoSuchFileException e) {
+            log.debug("Skipping event file {}: {}", file.getFileName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Completed event files, in counter order. Event files are named
+     * {@code <counter>-<uuid>.json}; ansible-runner writes them as
+     * {@code -partial.json} first and renames them when complete.
+     */
+    private static List<Path> eventFiles(Path eventsDir) throws IOException {
+        if (!Files.isDirectory(eventsDir)) {
+            return List.of();
+        }
+        try (Stream<Path> entries = Files.list(eventsDir)) {
+            return entries.filter(f -> {
+                        String name = f.getFileName().toString();
+                        return name.endsWith(".json") && !name.endsWith("-partial.json");
+                    })
+                    .sorted(Comparator.comparingLong(RunOutputController::eventCounter))
+                    .toList();
+        }
+    }
+
+    private static long transfer(FileChannel channel, long position, long count, WritableByteChannel target)
+            throws IOException {
+        long sent = 0;
+        while (sent < count) {
+            long n = channel.transferTo(position + sent, count - sent, target);
+            if (n <= 0) {
+                break;
+            }
+            sent += n;
+        }
+        return sent;
+    }
+
+    private static long eventCounter(Path file) {
+        String name = file.getFileName().toString();
+        int dash = name.indexOf('-');
+        try {
+            return Long.parseLong(dash > 0 ? name.substring(0, dash) : name);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
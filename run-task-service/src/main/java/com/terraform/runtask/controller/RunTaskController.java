@@ -2,7 +2,8 @@ package com.terraform.runtask.controller;
 
 import com.terraform.runtask.model.TerraformCallback;
 import com.terraform.runtask.model.TerraformWebhook;
-import com.terraform.runtask.service.AnsibleRunnerService;
+import com.terraform.runtask.service.RunExecutionQueue;
+import com.terraform.runtask.service.RunIdempotencyIndex;
 import com.terraform.runtask.service.TerraformCallbackService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -19,7 +20,8 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class RunTaskController {
 
-    private final AnsibleRunnerService ansibleRunnerService;
+    private final RunExecutionQueue runExecutionQueue;
+    private final RunIdempotencyIndex idempotencyIndex;
     private final TerraformCallbackService callbackService;
 
     @GetMapping("/health")
@@ -30,51 +32,95 @@ public class RunTaskController {
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/queue")
+    public ResponseEntity<Map<String, Object>> queue() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("depth", runExecutionQueue.size());
+        response.put("capacity", runExecutionQueue.capacity());
+        response.put("runs", runExecutionQueue.snapshot());
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/runs/{runId}/cancel")
+    public ResponseEntity<Map<String, Object>> cancel(@PathVariable String runId,
+                                                      @RequestParam(required = false) String stage) {
+        RunExecutionQueue.Cancellation cancellation = runExecutionQueue.cancel(runId, stage);
+        log.info("Cancel requested for run {} (stage: {}): {}", runId, stage != null ? stage : "any", cancellation);
+        Map<String, Object> response = new HashMap<>();
+        response.put("run_id", runId);
+        response.put("stage", stage);
+        response.put("result", cancellation.name().toLowerCase());
+        return switch (cancellation) {
+            case TERMINATING -> {
+                response.put("message", "Run is being terminated, TFE will receive a failed callback");
+                yield ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+            }
+            case ARMED -> {
+                response.put("message", "Run is queued on this node, it will be canceled when it starts");
+                yield ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+            }
+            case ALREADY_TERMINATING -> {
+                response.put("message", "Run is already being terminated");
+                yield ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+            }
+            case NOT_FOUND -> {
+                response.put("message", "Run is not executing or queued on this node");
+                yield ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+            }
+        };
+    }
+
     @PostMapping("/run-task")
     public ResponseEntity<Map<String, String>> handleRunTask(@RequestBody TerraformWebhook webhook) {
-        log.info("=== Received Run Task webhook ===");
-        log.info("Run ID: {}", webhook.getRunId());
-        log.info("Workspace: {}", webhook.getWorkspaceName());
-        log.info("Organization: {}", webhook.getOrganizationName());
-        log.info("Stage: {}", webhook.getStage());
-        log.info("Task Result ID: {}", webhook.getTaskResultId());
-        log.info("Callback URL: {}", webhook.getTaskResultCallbackUrl());
-        log.info("Access Token: {}", webhook.getAccessToken() != null ? "***provided***" : "null");
-
-        try {
-            // Execute Ansible and send callback synchronously
-            ansibleRunnerService.executePlaybookAndCallback(webhook);
-            
-            log.info(" Ansible execution completed and callback sent to TFE");
-
-            // Return success (though TFE only cares about the callback)
-            Map<String, String> response = new HashMap<>();
-            response.put("status", "completed");
-            response.put("message", "Ansible execution completed and callback sent to TFE");
-            return ResponseEntity.ok(response);
-
-        } catch (Exception e) {
-            log.error("=== Error executing Ansible or sending callback ===", e);
-            
-            // Try to send failure callback
+        log.info("Received Run Task webhook: run_id={}, workspace={}, organization={}, stage={}, task_result_id={}, access_token={}",
+                webhook.getRunId(), webhook.getWorkspaceName(), webhook.getOrganizationName(), webhook.getStage(),
+                webhook.getTaskResultId(), webhook.getAccessToken() != null ? "***provided***" : "null");
+
+        switch (idempotencyIndex.register(webhook)) {
+            case DUPLICATE_IN_FLIGHT -> {
+                Map<String, String> response = new HashMap<>();
+                response.put("status", "accepted");
+                response.put("message", "Duplicate delivery, attached to the in-flight execution");
+                return ResponseEntity.ok(response);
+            }
+            case DUPLICATE_COMPLETED -> {
+                Map<String, String> response = new HashMap<>();
+                response.put("status", "completed");
+                response.put("message", "Duplicate delivery, task result already reported to TFE");
+                return ResponseEntity.ok(response);
+            }
+            default -> {
+                // New task result, execute it
+            }
+        }
+
+        if (!runExecutionQueue.submit(webhook)) {
+            idempotencyIndex.forget(webhook);
+
+            // Tell TFE the task is still pending rather than silently dropping it
             TerraformCallback callback = TerraformCallback.builder()
-                    .status("failed")
-                    .message("Failed to execute Ansible: " + e.getMessage())
+                    .status("running")
+                    .message(String.format("Run task queue is full (capacity: %d), execution deferred",
+                            runExecutionQueue.capacity()))
                     .build();
-            
-            if (webhook.getTaskResultCallbackUrl() != null) {
-                callbackService.sendCallback(
-                    webhook.getTaskResultCallbackUrl(), 
-                    callback, 
-                    webhook.getAccessToken()
-                );
-            }
+
+            callbackService.sendCallback(
+                webhook.getTaskResultCallbackUrl(),
+                callback,
+                webhook.getAccessToken()
+            );
 
             Map<String, String> response = new HashMap<>();
-            response.put("status", "error");
-            response.put("message", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+            response.put("status", "rejected");
+            response.put("message", "Run task queue is full");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(response);
         }
+
+        // TFE only cares about the callback, which is sent once the queued run completes
+        Map<String, String> response = new HashMap<>();
+        response.put("status", "accepted");
+        response.put("message", "Ansible execution queued, result will be sent to TFE via callback");
+        return ResponseEntity.ok(response);
     }
 
     @GetMapping("/run-task/test")
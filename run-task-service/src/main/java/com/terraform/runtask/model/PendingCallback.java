@@ -0,0 +1,34 @@
+package com.terraform.runtask.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A task-result PATCH that has not been acknowledged by TFE yet, as stored in
+ * the callback outbox.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingCallback {
+
+    @JsonProperty("id")
+    private String id;
+
+    @JsonProperty("callback_url")
+    private String callbackUrl;
+
+    @JsonProperty("access_token")
+    private String accessToken;
+
+    /** Serialized JSON:API request body, exactly as sent. */
+    @JsonProperty("payload")
+    private byte[] payload;
+
+    @JsonProperty("created_at")
+    private long createdAt;
+}
@@ -0,0 +1,98 @@
+package com.terraform.runtask.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Per-host and per-task results of one ansible-runner execution, built
+ * incrementally from the job event stream.
+ */
+@Data
+public class PlaybookSummary {
+
+    /**
+     * ansible-runner status: successful, failed, timeout, canceled, or error
+     * when the runner could not be started or its result could not be read.
+     */
+    private String status;
+
+    /** ansible-runner ident of the execution, also the name of its run directory; null if none was prepared. */
+    private String ident;
+
+    private int eventCount;
+
+    private int taskCount;
+
+    private final Map<String, HostStats> hosts = new LinkedHashMap<>();
+
+    /** Slowest task executions, longest first. Bounded by the parser. */
+    private final List<TaskTiming> slowestTasks = new ArrayList<>();
+
+    public boolean isSuccessful() {
+        return "successful".equals(status);
+    }
+
+    public HostStats host(String host) {
+        return hosts.computeIfAbsent(host, h -> new HostStats());
+    }
+
+    public List<String> getFailedHosts() {
+        return hosts.entrySet().stream()
+                .filter(e -> e.getValue().getFailed() > 0 || e.getValue().getUnreachable() > 0)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * One-line recap suitable for the TFE task result message.
+     */
+    public String describe() {
+        HostStats total = new HostStats();
+        hosts.values().forEach(total::add);
+        StringBuilder sb = new StringBuilder()
+                .append(hosts.size()).append(" host(s), ").append(taskCount).append(" task(s): ")
+                .append("ok=").append(total.getOk())
+                .append(" changed=").append(total.getChanged())
+                .append(" failed=").append(total.getFailed())
+                .append(" unreachable=").append(total.getUnreachable())
+                .append(" skipped=").append(total.getSkipped());
+        List<String> failedHosts = getFailedHosts();
+        if (!failedHosts.isEmpty()) {
+            sb.append("; failing hosts: ").append(String.join(", ", failedHosts));
+        }
+        return sb.toString();
+    }
+
+    @Data
+    public static class HostStats {
+        private int ok;
+        private int changed;
+        private int failed;
+        private int unreachable;
+        private int skipped;
+
+        public void add(HostStats other) {
+            ok += other.ok;
+            changed += other.changed;
+            failed += other.failed;
+            unreachable += other.unreachable;
+            skipped += other.skipped;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TaskTiming {
+        private String task;
+        private String host;
+        private long durationMs;
+    }
+}
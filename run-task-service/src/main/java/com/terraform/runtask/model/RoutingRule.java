@@ -0,0 +1,54 @@
+package com.terraform.runtask.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * One entry of the routing file. Match fields that are omitted (or {@code *})
+ * match anything; {@code workspace} matches a workspace ID or name.
+ */
+@Data
+@NoArgsConstructor
+public class RoutingRule {
+
+    @JsonProperty("name")
+    private String name;
+
+    @JsonProperty("organization")
+    private String organization;
+
+    @JsonProperty("workspace")
+    private String workspace;
+
+    @JsonProperty("stage")
+    private String stage;
+
+    /** {@code run} (default) executes the playbook, {@code pass} reports passed without running anything. */
+    @JsonProperty("action")
+    private String action;
+
+    /** Relative to the project directory; defaults to {@code ansible.runner.playbook}. */
+    @JsonProperty("playbook")
+    private String playbook;
+
+    /** Relative to the private data directory; defaults to {@code ansible.runner.inventory}. */
+    @JsonProperty("inventory")
+    private String inventory;
+
+    @JsonProperty("extra_vars")
+    private Map<String, Object> extraVars;
+
+    /**
+     * Lets runs of a read-only check reuse an earlier result for the same
+     * configuration version and playbook content (see {@code runtask.result-cache}).
+     */
+    @JsonProperty("cache")
+    private boolean cache;
+
+    /** Task result message for {@code pass} rules. */
+    @JsonProperty("message")
+    private String message;
+}
@@ -0,0 +1,24 @@
+package com.terraform.runtask.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A page of run history, newest first. Pass {@code next_cursor} back as
+ * {@code cursor} to fetch the following page; it is {@code null} on the last one.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RunHistoryPage {
+
+    @JsonProperty("items")
+    private List<RunRecord> items;
+
+    @JsonProperty("next_cursor")
+    private String nextCursor;
+}
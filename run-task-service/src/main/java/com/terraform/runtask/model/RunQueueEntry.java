@@ -0,0 +1,46 @@
+package com.terraform.runtask.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A run held by the scheduler, and what it is waiting on.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RunQueueEntry {
+
+    @JsonProperty("run_id")
+    private String runId;
+
+    @JsonProperty("task_result_id")
+    private String taskResultId;
+
+    @JsonProperty("organization_name")
+    private String organizationName;
+
+    @JsonProperty("workspace_id")
+    private String workspaceId;
+
+    @JsonProperty("inventory")
+    private String inventory;
+
+    @JsonProperty("enforcement_level")
+    private String enforcementLevel;
+
+    /**
+     * {@code running}, or for a pending run the first thing holding it back:
+     * {@code organization_limit}, {@code workspace_limit}, {@code inventory_busy},
+     * {@code worker} (all workers busy) or {@code fair_share} (next in turn).
+     */
+    @JsonProperty("waiting_on")
+    private String waitingOn;
+
+    @JsonProperty("waited_ms")
+    private long waitedMs;
+}
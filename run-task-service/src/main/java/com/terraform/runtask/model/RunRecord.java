@@ -0,0 +1,81 @@
+package com.terraform.runtask.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * One executed task result as kept in the run history.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RunRecord {
+
+    @JsonProperty("id")
+    private long id;
+
+    @JsonProperty("task_result_id")
+    private String taskResultId;
+
+    @JsonProperty("run_id")
+    private String runId;
+
+    @JsonProperty("organization_name")
+    private String organizationName;
+
+    @JsonProperty("workspace_id")
+    private String workspaceId;
+
+    @JsonProperty("workspace_name")
+    private String workspaceName;
+
+    @JsonProperty("stage")
+    private String stage;
+
+    @JsonProperty("enforcement_level")
+    private String enforcementLevel;
+
+    /** Status reported to TFE: passed or failed. */
+    @JsonProperty("result")
+    private String result;
+
+    /** ansible-runner status: successful, failed, timeout, canceled, error. */
+    @JsonProperty("runner_status")
+    private String runnerStatus;
+
+    /** Run directory holding the output of the execution behind this result, if it kept one. */
+    @JsonProperty("ident")
+    private String ident;
+
+    /** Run ID of the execution this task result was coalesced into, if any. */
+    @JsonProperty("coalesced_into")
+    private String coalescedInto;
+
+    @JsonProperty("queued_at")
+    private Instant queuedAt;
+
+    @JsonProperty("started_at")
+    private Instant startedAt;
+
+    @JsonProperty("finished_at")
+    private Instant finishedAt;
+
+    @JsonProperty("queue_ms")
+    private long queueMs;
+
+    @JsonProperty("duration_ms")
+    private long durationMs;
+
+    @JsonProperty("summary")
+    private String summary;
+
+    @JsonProperty("hosts")
+    private Map<String, PlaybookSummary.HostStats> hosts;
+}
@@ -39,6 +39,9 @@ public class TerraformWebhook {
     @JsonProperty("stage")
     private String stage;
     
+    @JsonProperty("configuration_version_id")
+    private String configurationVersionId;
+    
     @JsonProperty("access_token")
     private String accessToken;
     
@@ -0,0 +1,284 @@
+package com.terraform.runtask.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.terraform.runtask.model.PlaybookSummary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Streaming consumer for ansible-runner job events ({@code --json} stdout).
+ * Each event is read token by token and folded into a {@link PlaybookSummary};
+ * task results ({@code res}) and display text are skipped without being
+ * materialized, so memory stays flat regardless of playbook size.
+ * <p>
+ * A progress listener, if set, receives an immutable {@link Progress} after
+ * every event, so another thread can report on the run while it executes.
+ */
+public class AnsibleEventParser {
+
+    private final JsonFactory jsonFactory;
+    private final int maxTaskTimings;
+    private final PlaybookSummary summary = new PlaybookSummary();
+    private final PriorityQueue<PlaybookSummary.TaskTiming> slowest =
+            new PriorityQueue<>((a, b) -> Long.compare(a.getDurationMs(), b.getDurationMs()));
+    private Map<String, PlaybookSummary.HostStats> recap;
+    private long firstEventNanos;
+
+    private Consumer<Progress> progressListener;
+    private final PlaybookSummary.HostStats totals = new PlaybookSummary.HostStats();
+    private final Set<String> failingHosts = new LinkedHashSet<>();
+    private List<String> failingHostList = List.of();
+    private String currentTask;
+
+    public AnsibleEventParser(JsonFactory jsonFactory, int maxTaskTimings) {
+        this.jsonFactory = jsonFactory;
+        this.maxTaskTimings = maxTaskTimings;
+    }
+
+    /**
+     * Receives a {@link Progress} snapshot after each event, on the thread
+     * consuming the stream.
+     */
+    public void onProgress(Consumer<Progress> listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Consumes a stream of concatenated / newline-delimited event objects until EOF.
+     */
+    public void consume(InputStream in) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.START_OBJECT) {
+                    readEvent(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * Consumes a single event serialized on one line.
+     */
+    public void accept(String line) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(line)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                readEvent(parser);
+            }
+        }
+    }
+
+    /**
+     * Finalizes the summary. Per-host counts from the play recap win over the
+     * running tallies when the recap was received.
+     */
+    public PlaybookSummary finish(String status) {
+        summary.setStatus(status);
+        if (recap != null) {
+            summary.getHosts().clear();
+            summary.getHosts().putAll(recap);
+        }
+        summary.getSlowestTasks().clear();
+        summary.getSlowestTasks().addAll(slowest);
+        summary.getSlowestTasks().sort((a, b) -> Long.compare(b.getDurationMs(), a.getDurationMs()));
+        return summary;
+    }
+
+    public PlaybookSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * {@link System#nanoTime()} when the first event arrived, or {@code 0} if
+     * none has yet.
+     */
+    public long getFirstEventNanos() {
+        return firstEventNanos;
+    }
+
+    private void readEvent(JsonParser parser) throws IOException {
+        String event = null;
+        EventData data = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("event".equals(field)) {
+                event = parser.getText();
+            } else if ("event_data".equals(field) && value == JsonToken.START_OBJECT) {
+                data = readEventData(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (summary.getEventCount() == 0) {
+            firstEventNanos = System.nanoTime();
+        }
+        summary.setEventCount(summary.getEventCount() + 1);
+        if (event != null) {
+            apply(event, data != null ? data : new EventData());
+        }
+        if (progressListener != null) {
+            progressListener.accept(new Progress(summary.getEventCount(), summary.getTaskCount(), currentTask,
+                    summary.getHosts().size(), totals.getOk(), totals.getChanged(), totals.getFailed(),
+                    totals.getUnreachable(), totals.getSkipped(), failingHostList));
+        }
+    }
+
+    private EventData readEventData(JsonParser parser) throws IOException {
+        EventData data = new EventData();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "host" -> data.host = parser.getText();
+                case "task" -> data.task = parser.getText();
+                case "duration" -> {
+                    if (value.isNumeric()) {
+                        data.durationMs = Math.round(parser.getDoubleValue() * 1000);
+                    }
+                }
+                case "res" -> data.changed = readChanged(parser, value);
+                case "ok", "changed", "failures", "dark", "skipped" -> data.stats.put(field, readCounts(parser, value));
+                default -> parser.skipChildren();
+            }
+        }
+        return data;
+    }
+
+    /** Reads only the top-level {@code changed} flag of a task result. */
+    private boolean readChanged(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return false;
+        }
+        boolean changed = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken fieldValue = parser.nextToken();
+            if ("changed".equals(field) && fieldValue == JsonToken.VALUE_TRUE) {
+                changed = true;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return changed;
+    }
+
+    private Map<String, Integer> readCounts(JsonParser parser, JsonToken value) throws IOException {
+        Map<String, Integer> counts = new HashMap<>();
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return counts;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String host = parser.getCurrentName();
+            parser.nextToken();
+            counts.put(host, parser.getValueAsInt());
+        }
+        return counts;
+    }
+
+    private void apply(String event, EventData data) {
+        switch (event) {
+            case "playbook_on_task_start" -> {
+                summary.setTaskCount(summary.getTaskCount() + 1);
+                currentTask = data.task;
+            }
+            case "runner_on_ok" -> {
+                PlaybookSummary.HostStats stats = summary.host(data.host);
+                stats.setOk(stats.getOk() + 1);
+                totals.setOk(totals.getOk() + 1);
+                if (data.changed) {
+                    stats.setChanged(stats.getChanged() + 1);
+                    totals.setChanged(totals.getChanged() + 1);
+                }
+                recordTiming(data);
+            }
+            case "runner_on_failed" -> {
+                PlaybookSummary.HostStats stats = summary.host(data.host);
+                stats.setFailed(stats.getFailed() + 1);
+                totals.setFailed(totals.getFailed() + 1);
+                hostFailing(data.host);
+                recordTiming(data);
+            }
+            case "runner_on_unreachable" -> {
+                PlaybookSummary.HostStats stats = summary.host(data.host);
+                stats.setUnreachable(stats.getUnreachable() + 1);
+                totals.setUnreachable(totals.getUnreachable() + 1);
+                hostFailing(data.host);
+                recordTiming(data);
+            }
+            case "runner_on_skipped" -> {
+                PlaybookSummary.HostStats stats = summary.host(data.host);
+                stats.setSkipped(stats.getSkipped() + 1);
+                totals.setSkipped(totals.getSkipped() + 1);
+            }
+            case "playbook_on_stats" -> recap = toRecap(data.stats);
+            default -> {
+                // Other events (play start, includes, verbose output) carry nothing we summarize
+            }
+        }
+    }
+
+    private void hostFailing(String host) {
+        if (failingHosts.add(host)) {
+            // Copied only when a new host fails, so snapshots can share it
+            failingHostList = List.copyOf(failingHosts);
+        }
+    }
+
+    private void recordTiming(EventData data) {
+        if (data.durationMs < 0 || maxTaskTimings <= 0) {
+            return;
+        }
+        slowest.add(new PlaybookSummary.TaskTiming(data.task, data.host, data.durationMs));
+        if (slowest.size() > maxTaskTimings) {
+            slowest.poll();
+        }
+    }
+
+    private static Map<String, PlaybookSummary.HostStats> toRecap(Map<String, Map<String, Integer>> stats) {
+        Map<String, PlaybookSummary.HostStats> hosts = new LinkedHashMap<>();
+        stats.forEach((counter, perHost) -> perHost.forEach((host, count) -> {
+            PlaybookSummary.HostStats hostStats = hosts.computeIfAbsent(host, h -> new PlaybookSummary.HostStats());
+            switch (counter) {
+                case "ok" -> hostStats.setOk(count);
+                case "changed" -> hostStats.setChanged(count);
+                case "failures" -> hostStats.setFailed(count);
+                case "dark" -> hostStats.setUnreachable(count);
+                case "skipped" -> hostStats.setSkipped(count);
+                default -> { }
+            }
+        }));
+        return hosts;
+    }
+
+    /**
+     * Running tallies of an execution at one point of its event stream.
+     * {@code currentTask} is the last task started, {@code null} before the first.
+     */
+    public record Progress(int events, int tasks, String currentTask, int hosts, int ok, int changed,
+                           int failed, int unreachable, int skipped, List<String> failingHosts) {
+    }
+
+    private static final class EventData {
+        private String host = "unknown";
+        private String task;
+        private long durationMs = -1;
+        private boolean changed;
+        private final Map<String, Map<String, Integer>> stats = new HashMap<>();
+    }
+}
@@ -1,18 +1,25 @@
 package com.terraform.runtask.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.model.PlaybookSummary;
 import com.terraform.runtask.model.TerraformCallback;
 import com.terraform.runtask.model.TerraformWebhook;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @Service
@@ -20,111 +27,261 @@ import java.nio.file.Paths;
 public class AnsibleRunnerService {
 
     private final TerraformCallbackService callbackService;
-
-    @Value("${ansible.runner.project.path}")
-    private String projectPath;
-
-    @Value("${ansible.runner.playbook}")
-    private String playbook;
-
-    @Value("${ansible.runner.inventory}")
-    private String inventory;
+    private final RunWorkspaceManager workspaceManager;
+    private final ObjectMapper objectMapper;
+    private final WarmRunnerPool warmRunnerPool;
+    private final RunnerProcessLimiter processLimiter;
+    private final RunTaskMetrics metrics;
+    private final RunSupervisor supervisor;
+    private final RunProgressReporter progressReporter;
+    private final RunLinkSigner linkSigner;
 
     @Value("${ansible.runner.python.path:python3.8}")
     private String pythonPath;
 
-    public void executePlaybookAndCallback(TerraformWebhook webhook) {
+    @Value("${ansible.runner.events.max-task-timings:10}")
+    private int maxTaskTimings;
+
+    @Value("${runtask.public-base-url:}")
+    private String publicBaseUrl;
+
+    /**
+     * Executes {@code route} once for {@code webhook} and reports the result to
+     * its task result and to every coalesced webhook that was folded into it.
+     * TFE sees the run as {@code running}, with progress, until then.
+     */
+    public PlaybookSummary executePlaybookAndCallback(TerraformWebhook webhook, PlaybookRoute route,
+                                                      List<TerraformWebhook> coalesced) {
         long startTime = System.currentTimeMillis();
-        
+        RunProgressReporter.Tracker progress = progressReporter.start(webhook, coalesced);
+
         // Execute Ansible synchronously
-        boolean success = executePlaybook(webhook);
+        PlaybookSummary summary;
+        try {
+            summary = executePlaybook(webhook, route, progress);
+        } catch (RuntimeException e) {
+            progress.finish();
+            throw e;
+        }
         
         long executionTime = System.currentTimeMillis() - startTime;
-        log.info("Ansible execution completed in {}ms with status: {}", 
-                 executionTime, success ? "SUCCESS" : "FAILED");
+        metrics.playbookDuration(webhook, summary.getStatus(), executionTime);
+        log.info("Ansible execution completed in {}ms with status: {} ({})", 
+                 executionTime, summary.isSuccessful() ? "SUCCESS" : "FAILED", summary.describe());
         
-        // Send callback to TFE with actual result
-        sendCallbackToTFE(webhook, success, executionTime);
+        // Persist the result before returning, but send it only once no progress update can overtake it
+        CompletableFuture<Void> progressSettled = progress.finish();
+        sendCallbackToTFE(webhook, webhook, summary, executionTime, progressSettled);
+        for (TerraformWebhook follower : coalesced) {
+            sendCallbackToTFE(follower, webhook, summary, executionTime, progressSettled);
+        }
+        return summary;
     }
 
-    private void sendCallbackToTFE(TerraformWebhook webhook, boolean success, long executionTime) {
+    private void sendCallbackToTFE(TerraformWebhook webhook, TerraformWebhook executed,
+                                   PlaybookSummary summary, long executionTime, CompletableFuture<Void> after) {
         if (webhook.getTaskResultCallbackUrl() == null || webhook.getTaskResultCallbackUrl().isEmpty()) {
             log.warn("⚠️ No callback URL provided - cannot report result to TFE!");
             return;
         }
 
+        boolean success = summary.isSuccessful();
+        String runRef = webhook == executed
+                ? String.format("run_id: %s", executed.getRunId())
+                : String.format("run_id: %s, coalesced into run_id: %s", webhook.getRunId(), executed.getRunId());
+        String message;
+        if (success) {
+            message = String.format("Ansible playbook executed successfully (%s, execution_time: %dms) - %s",
+                    runRef, executionTime, summary.describe());
+        } else if (RunSupervisor.TIMEOUT.equals(summary.getStatus())) {
+            message = String.format("Ansible playbook timed out and was terminated (%s, execution_time: %dms) - %s",
+                    runRef, executionTime, summary.describe());
+        } else if (RunSupervisor.CANCELED.equals(summary.getStatus())) {
+            message = String.format("Ansible playbook was canceled (%s) - %s", runRef, summary.describe());
+        } else {
+            message = String.format("Ansible playbook execution failed (%s) - %s", runRef, summary.describe());
+        }
         TerraformCallback callback = TerraformCallback.builder()
                 .status(success ? "passed" : "failed")
-                .message(success ? 
-                    String.format("Ansible playbook executed successfully (run_id: %s, execution_time: %dms)", 
-                        webhook.getRunId(), executionTime) : 
-                    String.format("Ansible playbook execution failed (run_id: %s)", webhook.getRunId()))
-                .url(null)  // No artifacts URL - local files not accessible via HTTP
+                .message(message)
+                .url(getOutputUrl(executed))
                 .build();
 
         callbackService.sendCallback(
             webhook.getTaskResultCallbackUrl(), 
             callback, 
-            webhook.getAccessToken()
+            webhook.getAccessToken(),
+            after
         );
     }
 
-    private boolean executePlaybook(TerraformWebhook webhook) {
+    private PlaybookSummary executePlaybook(TerraformWebhook webhook, PlaybookRoute route,
+                                            RunProgressReporter.Tracker progress) {
+        AnsibleEventParser events = new AnsibleEventParser(objectMapper.getFactory(), maxTaskTimings);
+        events.onProgress(progress);
+        RunWorkspace workspace = null;
+        RunSupervisor.Execution execution = supervisor.begin(webhook);
         try {
-            log.info("Executing ansible-runner for run: {}", webhook.getRunId());
+            workspace = workspaceManager.prepare(webhook);
+            events.getSummary().setIdent(workspace.getIdent());
+            String inventoryPath = workspace.getPrivateDataDir().resolve(route.getInventory()).toString();
+            String cmdline = extraVarsCmdline(workspace, route);
+            log.info("Run {} routed to {} (playbook: {}, inventory: {})",
+                    webhook.getRunId(), route.getName(), route.getPlaybook(), route.getInventory());
 
-            ProcessBuilder pb = new ProcessBuilder(
-                pythonPath, "-m", "ansible_runner", "run",
-                projectPath,
-                "-p", playbook,
-                "-i", inventory
-            );
+            processLimiter.acquire();
+            execution.start();
+            try {
+                if (execution.getKilledReason() != null) {
+                    log.warn("Run {} was {} before ansible-runner started", webhook.getRunId(),
+                            execution.getKilledReason());
+                    return events.finish(execution.getKilledReason());
+                }
+                long launched = System.nanoTime();
+                Optional<String> warmStatus = warmRunnerPool.execute(workspace, route.getPlaybook(), inventoryPath,
+                        cmdline, execution, events);
+                if (warmStatus.isPresent()) {
+                    recordSpawn("warm", launched, events);
+                    log.info("Warm ansible-runner completed with status: {} ({} events)",
+                            warmStatus.get(), events.getSummary().getEventCount());
+                    return events.finish(statusOf(execution, warmStatus.get()));
+                }
 
-            pb.directory(new File(projectPath));
-            pb.redirectErrorStream(true);
+                return events.finish(statusOf(execution, executeForked(webhook, workspace, route.getPlaybook(),
+                        inventoryPath, cmdline, execution, events)));
+            } finally {
+                processLimiter.release();
+            }
 
-            Process process = pb.start();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while executing ansible-runner for run {}", webhook.getRunId());
+            return events.finish("canceled");
+        } catch (Exception e) {
+            if (execution.getKilledReason() != null) {
+                log.warn("ansible-runner for run {} was terminated: {}", webhook.getRunId(), execution.getKilledReason());
+                return events.finish(execution.getKilledReason());
+            }
+            log.error("Failed to execute ansible-runner", e);
+            return events.finish("error");
+        } finally {
+            supervisor.end(execution);
+            if (workspace != null) {
+                workspaceManager.complete(workspace);
+            }
+        }
+    }
 
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    log.debug("ansible-runner: {}", line);
-                }
+    private String executeForked(TerraformWebhook webhook, RunWorkspace workspace, String playbook,
+                                 String inventoryPath, String cmdline, RunSupervisor.Execution execution,
+                                 AnsibleEventParser events) throws IOException, InterruptedException {
+        log.info("Executing ansible-runner for run: {} (ident: {})", webhook.getRunId(), workspace.getIdent());
+
+        Path privateDataDir = workspace.getPrivateDataDir();
+        List<String> command = new ArrayList<>(supervisor.limitPrefix());
+        command.addAll(List.of(
+            pythonPath, "-m", "ansible_runner", "run",
+            privateDataDir.toString(),
+            "-p", playbook,
+            "--inventory", inventoryPath,
+            "--ident", workspace.getIdent(),
+            "--json"
+        ));
+        if (cmdline != null) {
+            command.add("--cmdline");
+            command.add(cmdline);
+        }
+        ProcessBuilder pb = new ProcessBuilder(command);
+
+        pb.directory(privateDataDir.toFile());
+        // stdout carries only JSON events; keep Python warnings and tracebacks out of the stream
+        pb.redirectError(privateDataDir.resolve("runner-stderr.log").toFile());
+
+        long launched = System.nanoTime();
+        Process process = pb.start();
+        execution.attach(process);
+
+        try (InputStream stdout = process.getInputStream()) {
+            try {
+                events.consume(stdout);
+            } catch (JsonProcessingException e) {
+                log.warn("Unparseable ansible-runner event stream for run {}: {}", webhook.getRunId(), e.getOriginalMessage());
+                stdout.transferTo(OutputStream.nullOutputStream());
             }
+        }
+
+        recordSpawn("fork", launched, events);
+        int exitCode = process.waitFor();
+        log.info("ansible-runner completed with exit code: {} ({} events)", exitCode, events.getSummary().getEventCount());
 
-            int exitCode = process.waitFor();
-            log.info("ansible-runner completed with exit code: {}", exitCode);
+        return checkStatus(workspace);
+    }
 
-            return checkStatus();
+    /**
+     * Writes the route's extra vars into the run's private data directory and
+     * returns the ansible-playbook arguments that load them. The shared
+     * {@code env/extravars} is a symlink into the project, so it cannot be used
+     * per run.
+     */
+    private static String extraVarsCmdline(RunWorkspace workspace, PlaybookRoute route) throws IOException {
+        if (route.getExtraVarsJson() == null) {
+            return null;
+        }
+        Path file = workspace.getPrivateDataDir().resolve("route-extravars.json");
+        Files.writeString(file, route.getExtraVarsJson());
+        return "--extra-vars '@" + file.toString().replace("'", "'\\''") + "'";
+    }
 
-        } catch (Exception e) {
-            log.error("Failed to execute ansible-runner", e);
-            return false;
+    /**
+     * A killed execution reports why it was killed, whatever ansible-runner
+     * managed to write before it stopped.
+     */
+    private static String statusOf(RunSupervisor.Execution execution, String status) {
+        return execution.getKilledReason() != null ? execution.getKilledReason() : status;
+    }
+
+    private void recordSpawn(String mode, long launched, AnsibleEventParser events) {
+        if (events.getFirstEventNanos() != 0) {
+            metrics.runnerSpawn(mode, events.getFirstEventNanos() - launched);
         }
     }
 
-    private boolean checkStatus() {
+    private String checkStatus(RunWorkspace workspace) {
         try {
-            Path artifactsPath = Paths.get(projectPath, "artifacts");
-            
-            Path statusFile = Paths.get(projectPath, "artifacts/inventory/hosts/status");
+            Path statusFile = workspace.getStatusFile();
             
             if (Files.exists(statusFile)) {
                 String status = Files.readString(statusFile).trim();
                 log.info("Ansible run status: {}", status);
-                return "successful".equals(status);
+                return status;
             }
             
-            log.warn("Status file not found");
-            return false;
+            log.warn("Status file not found: {}", statusFile);
+            return "error";
             
         } catch (Exception e) {
             log.error("Error reading status file", e);
-            return false;
+            return "error";
         }
     }
 
-    public String getArtifactsUrl() {
-        return projectPath + "/artifacts/inventory/hosts/stdout";
+    /**
+     * Signed link to the run's output endpoint for the callback, or {@code null}
+     * when {@code runtask.public-base-url} (TFE needs an absolute URL) or
+     * {@code runtask.read-access.token} is not configured.
+     */
+    public String getOutputUrl(TerraformWebhook webhook) {
+        if (publicBaseUrl.isEmpty() || !linkSigner.isEnabled() || webhook.getRunId() == null) {
+            return null;
+        }
+        long expires = linkSigner.expiresAt();
+        return UriComponentsBuilder.fromHttpUrl(publicBaseUrl)
+                .path("/api/runs/{runId}/output")
+                .queryParamIfPresent("stage", Optional.ofNullable(webhook.getStage()))
+                .queryParam("expires", expires)
+                .queryParam("signature", linkSigner.sign(webhook.getRunId(), webhook.getStage(), expires))
+                .buildAndExpand(webhook.getRunId())
+                .encode()
+                .toUriString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+package com.terraform.runtask.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.model.PendingCallback;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Durable outbox for TFE callbacks: one file per undelivered PATCH, removed once
+ * TFE acknowledges it or rejects it permanently. Whatever is left at startup is
+ * replayed. Disabled (in-memory only) when no directory is configured.
+ * <p>
+ * Files contain the run's access token, so they are created owner-readable only.
+ */
+@Slf4j
+@Component
+public class CallbackOutbox {
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+
+    public CallbackOutbox(ObjectMapper objectMapper,
+                          @Value("${runtask.callback.outbox-dir:}") String directory) {
+        this.objectMapper = objectMapper;
+        this.directory = directory.isEmpty() ? null : Paths.get(directory).toAbsolutePath();
+    }
+
+    public PendingCallback store(String callbackUrl, String accessToken, byte[] payload) {
+        PendingCallback pending = PendingCallback.builder()
+                .id(UUID.randomUUID().toString())
+                .callbackUrl(callbackUrl)
+                .accessToken(accessToken)
+                .payload(payload)
+                .createdAt(System.currentTimeMillis())
+                .build();
+        if (directory == null) {
+            return pending;
+        }
+        try {
+            Files.createDirectories(directory);
+            Path tmp = directory.resolve(pending.getId() + ".tmp");
+            Files.write(tmp, objectMapper.writeValueAsBytes(pending));
+            restrictPermissions(tmp);
+            Files.move(tmp, file(pending), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Delivery still proceeds, it just won't survive a restart
+            log.error("Failed to persist callback {} to outbox", pending.getId(), e);
+        }
+        return pending;
+    }
+
+    public void remove(PendingCallback pending) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file(pending));
+        } catch (IOException e) {
+            log.warn("Failed to remove delivered callback {} from outbox: {}", pending.getId(), e.getMessage());
+        }
+    }
+
+    public List<PendingCallback> loadPending() {
+        List<PendingCallback> pending = new ArrayList<>();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return pending;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(f -> f.getFileName().toString().endsWith(".json")).forEach(f -> {
+                try {
+                    pending.add(objectMapper.readValue(f.toFile(), PendingCallback.class));
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable outbox entry {}: {}", f, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.error("Failed to read callback outbox {}", directory, e);
+        }
+        return pending;
+    }
+
+    private Path file(PendingCallback pending) {
+        return directory.resolve(pending.getId() + ".json");
+    }
+
+    private static void restrictPermissions(Path file) {
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException | IOException e) {
+            // Non-POSIX file system; rely on the directory's permissions
+        }
+    }
+}
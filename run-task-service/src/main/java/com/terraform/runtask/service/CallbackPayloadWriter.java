@@ -0,0 +1,93 @@
+package com.terraform.runtask.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.model.TerraformCallback;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes the JSON:API task-result body straight from a {@link TerraformCallback}
+ * in a single streaming pass. Field names and the constant {@code type} are
+ * pre-encoded once, output buffers are pooled, and the only per-callback
+ * allocation is the final byte array that is both sent and logged. The pool
+ * is shared rather than per thread because callback dispatch may run on
+ * virtual threads, which would each start with an empty buffer.
+ */
+@Component
+public class CallbackPayloadWriter {
+
+    private static final SerializedString DATA = new SerializedString("data");
+    private static final SerializedString TYPE = new SerializedString("type");
+    private static final SerializedString TASK_RESULTS = new SerializedString("task-results");
+    private static final SerializedString ATTRIBUTES = new SerializedString("attributes");
+    private static final SerializedString STATUS = new SerializedString("status");
+    private static final SerializedString MESSAGE = new SerializedString("message");
+    private static final SerializedString URL = new SerializedString("url");
+
+    private final JsonFactory jsonFactory;
+    private final BlockingQueue<ByteArrayBuilder> buffers =
+            new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+    public CallbackPayloadWriter(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Serializes {@code { data: { type: "task-results", attributes: { status, message, url } } }}.
+     * Attributes come from {@link TerraformCallback#getData()} when present,
+     * otherwise from the callback's top-level fields.
+     */
+    public byte[] write(TerraformCallback callback) throws IOException {
+        String status = callback.getStatus();
+        String message = callback.getMessage();
+        String url = callback.getUrl();
+        TerraformCallback.CallbackData data = callback.getData();
+        if (data != null && data.getAttributes() != null) {
+            status = data.getAttributes().getStatus();
+            message = data.getAttributes().getMessage();
+            url = data.getAttributes().getUrl();
+        }
+
+        ByteArrayBuilder buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = new ByteArrayBuilder(512);
+        }
+        buffer.reset();
+        try (JsonGenerator gen = jsonFactory.createGenerator(buffer)) {
+            gen.writeStartObject();
+            gen.writeFieldName(DATA);
+            gen.writeStartObject();
+            gen.writeFieldName(TYPE);
+            gen.writeString(TASK_RESULTS);
+            gen.writeFieldName(ATTRIBUTES);
+            gen.writeStartObject();
+            writeField(gen, STATUS, status);
+            writeField(gen, MESSAGE, message);
+            if (url != null && !url.isEmpty()) {
+                writeField(gen, URL, url);
+            }
+            gen.writeEndObject();
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+        byte[] payload = buffer.toByteArray();
+        buffers.offer(buffer);
+        return payload;
+    }
+
+    private static void writeField(JsonGenerator gen, SerializedString name, String value) throws IOException {
+        gen.writeFieldName(name);
+        if (value == null) {
+            gen.writeNull();
+        } else {
+            gen.writeString(value);
+        }
+    }
+}
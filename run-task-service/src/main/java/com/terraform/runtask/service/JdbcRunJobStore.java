@@ -0,0 +1,383 @@
+package com.terraform.runtask.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.model.TerraformWebhook;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RunJobStore} backed by a {@code run_jobs} table in the shared
+ * database, so several nodes pointed at the same database share one queue.
+ * <p>
+ * A node claims a run by moving it to {@code LEASED} under its node ID with a
+ * lease deadline, using an optimistic version check so two nodes never claim
+ * the same row. While the run executes, a heartbeat extends the lease every
+ * third of {@code lease-ms}. A run whose lease has expired is claimable
+ * again, with its attempt count raised; the queue decides whether to re-execute it
+ * or report it as failed. Lease deadlines are wall-clock milliseconds, so node
+ * clocks must be kept in sync (NTP).
+ * <p>
+ * Every task result a run answers for, the one it executes and the ones
+ * coalesced into it, holds a row in {@code run_job_task_results}, keyed on the
+ * task result ID. A second delivery of a task result that is already queued or
+ * leased anywhere, superseded or not, is rejected by that key. The rows go away
+ * with the run; rows left behind by a node that died between the two inserts
+ * are swept by the heartbeat.
+ * <p>
+ * The route a run was resolved to is stored with it, so the node that claims
+ * it executes that route whatever its own routing table says. Rows queued
+ * before the column existed have none and are routed once when claimed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "runtask.distribution.backend", havingValue = "jdbc")
+public class JdbcRunJobStore implements RunJobStore {
+
+    private static final int CLAIM_CANDIDATES = 8;
+    private static final TypeReference<List<TerraformWebhook>> WEBHOOKS = new TypeReference<>() {};
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final String nodeId;
+    private final long leaseMs;
+    private final long pollMs;
+    private final Map<String, RunJob> held = new ConcurrentHashMap<>();
+    private final Object wakeup = new Object();
+    private ScheduledExecutorService heartbeat;
+
+    public JdbcRunJobStore(
+            JdbcTemplate jdbc,
+            ObjectMapper objectMapper,
+            @Value("${runtask.distribution.node-id:}") String nodeId,
+            @Value("${runtask.distribution.lease-ms:30000}") long leaseMs,
+            @Value("${runtask.distribution.poll-ms:500}") long pollMs) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.nodeId = nodeId.isEmpty() ? defaultNodeId() : nodeId;
+        this.leaseMs = leaseMs;
+        this.pollMs = pollMs;
+    }
+
+    @PostConstruct
+    void start() {
+        jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS run_jobs (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    task_result_id VARCHAR(255) UNIQUE,
+                    coalesce_key VARCHAR(512),
+                    priority INT NOT NULL,
+                    state VARCHAR(16) NOT NULL,
+                    webhook CLOB NOT NULL,
+                    coalesced CLOB,
+                    route CLOB,
+                    enqueued_at BIGINT NOT NULL,
+                    owner VARCHAR(255),
+                    lease_until BIGINT,
+                    attempts INT DEFAULT 0 NOT NULL,
+                    version INT DEFAULT 0 NOT NULL
+                )""");
+        jdbc.execute("ALTER TABLE run_jobs ADD COLUMN IF NOT EXISTS route CLOB");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS run_jobs_claim ON run_jobs (state, priority, id)");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS run_jobs_lease ON run_jobs (state, lease_until)");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS run_jobs_coalesce ON run_jobs (coalesce_key, state)");
+        jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS run_job_task_results (
+                    task_result_id VARCHAR(255) PRIMARY KEY,
+                    job_id BIGINT,
+                    registered_at BIGINT NOT NULL
+                )""");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS run_job_task_results_job ON run_job_task_results (job_id)");
+
+        heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "run-lease-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(100, leaseMs / 3);
+        heartbeat.scheduleWithFixedDelay(this::renewLeases, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Shared run queue enabled (node: {}, lease: {}ms, {} run(s) waiting)", nodeId, leaseMs, size());
+    }
+
+    @PreDestroy
+    void stop() {
+        heartbeat.shutdownNow();
+    }
+
+    @Override
+    public Submission submit(TerraformWebhook webhook, PlaybookRoute route, int priority, String coalesceKey,
+                             int capacity) {
+        String taskResultId = webhook.getTaskResultId();
+        if (taskResultId != null && !register(taskResultId)) {
+            return Submission.DUPLICATE;
+        }
+        try {
+            if (coalesceKey != null) {
+                Submission coalesced = coalesce(webhook, route, coalesceKey);
+                if (coalesced != null) {
+                    if (coalesced != Submission.COALESCED) {
+                        unregister(taskResultId);
+                    }
+                    return coalesced;
+                }
+            }
+            if (size() >= capacity) {
+                unregister(taskResultId);
+                return Submission.FULL;
+            }
+            jdbc.update("""
+                    INSERT INTO run_jobs (task_result_id, coalesce_key, priority, state, webhook, route, enqueued_at)
+                    VALUES (?, ?, ?, 'QUEUED', ?, ?, ?)""",
+                    taskResultId, coalesceKey, priority, objectMapper.writeValueAsString(webhook),
+                    objectMapper.writeValueAsString(route), System.currentTimeMillis());
+            if (taskResultId != null) {
+                jdbc.update("""
+                        UPDATE run_job_task_results SET job_id = (SELECT id FROM run_jobs WHERE task_result_id = ?)
+                        WHERE task_result_id = ?""", taskResultId, taskResultId);
+            }
+        } catch (DuplicateKeyException e) {
+            // Queued before run_job_task_results existed
+            unregister(taskResultId);
+            return Submission.DUPLICATE;
+        } catch (IOException e) {
+            unregister(taskResultId);
+            throw new IllegalStateException("Cannot serialize webhook for run " + webhook.getRunId(), e);
+        }
+        synchronized (wakeup) {
+            wakeup.notifyAll();
+        }
+        return Submission.QUEUED;
+    }
+
+    @Override
+    public RunJob take() throws InterruptedException {
+        while (true) {
+            RunJob job = claim();
+            if (job != null) {
+                return job;
+            }
+            synchronized (wakeup) {
+                wakeup.wait(pollMs);
+            }
+        }
+    }
+
+    @Override
+    public void complete(RunJob job) {
+        held.remove(job.getId());
+        int removed = jdbc.update("DELETE FROM run_jobs WHERE id = ? AND owner = ?", Long.parseLong(job.getId()), nodeId);
+        if (removed == 1) {
+            jdbc.update("DELETE FROM run_job_task_results WHERE job_id = ?", Long.parseLong(job.getId()));
+        } else {
+            log.warn("Lease on run {} (job {}) was lost before it completed; another node may have reclaimed it",
+                    job.getWebhook().getRunId(), job.getId());
+        }
+    }
+
+    @Override
+    public void release(RunJob job) {
+        held.remove(job.getId());
+        jdbc.update("""
+                UPDATE run_jobs SET state = 'QUEUED', owner = NULL, lease_until = NULL,
+                    attempts = attempts - 1, version = version + 1
+                WHERE id = ? AND owner = ?""", Long.parseLong(job.getId()), nodeId);
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public int size() {
+        Integer count = jdbc.queryForObject("SELECT COUNT(*) FROM run_jobs WHERE state = 'QUEUED'", Integer.class);
+        return count != null ? count : 0;
+    }
+
+    @Override
+    public List<TerraformWebhook> queuedOnThisNode(String runId) {
+        // Unclaimed rows belong to whichever node claims them first
+        return List.of();
+    }
+
+    private RunJob claim() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> candidates = jdbc.queryForList("""
+                SELECT id, version FROM run_jobs
+                WHERE state = 'QUEUED' OR (state = 'LEASED' AND lease_until < ?)
+                ORDER BY priority, id
+                FETCH FIRST ? ROWS ONLY""", now, CLAIM_CANDIDATES);
+        for (Map<String, Object> candidate : candidates) {
+            long id = ((Number) candidate.get("ID")).longValue();
+            int version = ((Number) candidate.get("VERSION")).intValue();
+            int claimed = jdbc.update("""
+                    UPDATE run_jobs
+                    SET state = 'LEASED', owner = ?, lease_until = ?, attempts = attempts + 1, version = version + 1
+                    WHERE id = ? AND version = ?""", nodeId, now + leaseMs, id, version);
+            if (claimed == 1) {
+                RunJob job = load(id);
+                if (job != null) {
+                    held.put(job.getId(), job);
+                    if (job.getAttempt() > 1) {
+                        log.warn("Reclaimed run {} (job {}) after its lease expired, attempt {}",
+                                job.getWebhook().getRunId(), id, job.getAttempt());
+                    }
+                    return job;
+                }
+            }
+        }
+        return null;
+    }
+
+    private RunJob load(long id) {
+        List<RunJob> jobs = jdbc.query(
+                "SELECT webhook, coalesced, route, enqueued_at, attempts FROM run_jobs WHERE id = ?",
+                (rs, rowNum) -> {
+                    try {
+                        TerraformWebhook webhook = objectMapper.readValue(rs.getString("webhook"), TerraformWebhook.class);
+                        String coalesced = rs.getString("coalesced");
+                        String route = rs.getString("route");
+                        return new RunJob(String.valueOf(id), webhook,
+                                route != null ? objectMapper.readValue(route, PlaybookRoute.class) : null,
+                                coalesced != null ? objectMapper.readValue(coalesced, WEBHOOKS) : List.of(),
+                                rs.getLong("enqueued_at"), rs.getInt("attempts"));
+                    } catch (IOException e) {
+                        log.error("Discarding unreadable run job {}", id, e);
+                        return null;
+                    }
+                }, id);
+        RunJob job = jobs.isEmpty() ? null : jobs.get(0);
+        if (job == null) {
+            jdbc.update("DELETE FROM run_jobs WHERE id = ?", id);
+            jdbc.update("DELETE FROM run_job_task_results WHERE job_id = ?", id);
+        }
+        return job;
+    }
+
+    /**
+     * Replaces the webhook and route of a waiting run for the same workspace
+     * and stage.
+     * Loses to a concurrent claim via the version check, in which case the
+     * caller queues a new run.
+     *
+     * @return {@code null} if there is no waiting run to coalesce into,
+     *         {@link Submission#DUPLICATE} if the waiting run already answers
+     *         for this task result
+     */
+    private Submission coalesce(TerraformWebhook webhook, PlaybookRoute route, String coalesceKey) throws IOException {
+        List<Map<String, Object>> waiting = jdbc.queryForList("""
+                SELECT id, version, webhook, coalesced FROM run_jobs
+                WHERE coalesce_key = ? AND state = 'QUEUED'
+                ORDER BY id FETCH FIRST 1 ROWS ONLY""", coalesceKey);
+        if (waiting.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> row = waiting.get(0);
+        TerraformWebhook previous = objectMapper.readValue((String) row.get("WEBHOOK"), TerraformWebhook.class);
+        List<TerraformWebhook> coalesced = new ArrayList<>();
+        if (row.get("COALESCED") != null) {
+            coalesced.addAll(objectMapper.readValue((String) row.get("COALESCED"), WEBHOOKS));
+        }
+        coalesced.add(previous);
+        String taskResultId = webhook.getTaskResultId();
+        if (taskResultId != null && coalesced.stream().anyMatch(c -> taskResultId.equals(c.getTaskResultId()))) {
+            return Submission.DUPLICATE;
+        }
+        int updated = jdbc.update("""
+                UPDATE run_jobs SET webhook = ?, coalesced = ?, route = ?, task_result_id = ?, version = version + 1
+                WHERE id = ? AND version = ? AND state = 'QUEUED'""",
+                objectMapper.writeValueAsString(webhook), objectMapper.writeValueAsString(coalesced),
+                objectMapper.writeValueAsString(route), taskResultId, row.get("ID"), row.get("VERSION"));
+        if (updated != 1) {
+            return null;
+        }
+        if (taskResultId != null) {
+            jdbc.update("UPDATE run_job_task_results SET job_id = ? WHERE task_result_id = ?", row.get("ID"), taskResultId);
+        }
+        log.info("Coalescing run {} into queued slot of run {} (workspace: {}, stage: {})",
+                webhook.getRunId(), previous.getRunId(), webhook.getWorkspaceName(), webhook.getStage());
+        return Submission.COALESCED;
+    }
+
+    /**
+     * Claims {@code taskResultId} for a run about to be queued or coalesced.
+     *
+     * @return {@code false} if a queued or leased run already answers for it
+     */
+    private boolean register(String taskResultId) {
+        try {
+            jdbc.update("INSERT INTO run_job_task_results (task_result_id, registered_at) VALUES (?, ?)",
+                    taskResultId, System.currentTimeMillis());
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private void unregister(String taskResultId) {
+        if (taskResultId != null) {
+            jdbc.update("DELETE FROM run_job_task_results WHERE task_result_id = ? AND job_id IS NULL", taskResultId);
+        }
+    }
+
+    /**
+     * Drops task result rows whose run never got queued (the node died in
+     * between) or is gone.
+     */
+    private void sweepTaskResults() {
+        jdbc.update("""
+                DELETE FROM run_job_task_results
+                WHERE (job_id IS NULL AND registered_at < ?)
+                   OR (job_id IS NOT NULL AND NOT EXISTS (SELECT 1 FROM run_jobs WHERE run_jobs.id = job_id))""",
+                System.currentTimeMillis() - leaseMs);
+    }
+
+    private void renewLeases() {
+        try {
+            sweepTaskResults();
+        } catch (Exception e) {
+            log.warn("Task result sweep failed: {}", e.getMessage());
+        }
+        long until = System.currentTimeMillis() + leaseMs;
+        for (RunJob job : held.values()) {
+            try {
+                int renewed = jdbc.update("UPDATE run_jobs SET lease_until = ? WHERE id = ? AND owner = ?",
+                        until, Long.parseLong(job.getId()), nodeId);
+                if (renewed == 0) {
+                    log.warn("Could not renew lease on run {} (job {}); it was reclaimed by another node",
+                            job.getWebhook().getRunId(), job.getId());
+                    held.remove(job.getId());
+                }
+            } catch (Exception e) {
+                log.warn("Lease heartbeat for job {} failed: {}", job.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "unknown";
+        }
+        return host + ":" + ManagementFactory.getRuntimeMXBean().getPid();
+    }
+}
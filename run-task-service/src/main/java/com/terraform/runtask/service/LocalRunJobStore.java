@@ -0,0 +1,116 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.model.TerraformWebhook;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory {@link RunJobStore} for a single node. Queued runs are lost on
+ * restart; TFE redelivers the webhooks it has not seen a callback for.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "runtask.distribution.backend", havingValue = "local", matchIfMissing = true)
+public class LocalRunJobStore implements RunJobStore {
+
+    private final PriorityBlockingQueue<QueuedRun> queue = new PriorityBlockingQueue<>();
+    private final Map<String, QueuedRun> waitingByKey = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Override
+    public synchronized Submission submit(TerraformWebhook webhook, PlaybookRoute route, int priority, String coalesceKey, int capacity) {
+        if (coalesceKey != null) {
+            QueuedRun waiting = waitingByKey.get(coalesceKey);
+            if (waiting != null) {
+                log.info("Coalescing run {} into queued slot of run {} (workspace: {}, stage: {})",
+                        webhook.getRunId(), waiting.webhook.getRunId(), webhook.getWorkspaceName(), webhook.getStage());
+                waiting.coalesced.add(waiting.webhook);
+                waiting.webhook = webhook;
+                waiting.route = route;
+                return Submission.COALESCED;
+            }
+        }
+        if (queue.size() >= capacity) {
+            return Submission.FULL;
+        }
+        QueuedRun run = new QueuedRun(webhook, route, coalesceKey, priority, sequence.incrementAndGet(),
+                System.currentTimeMillis());
+        queue.add(run);
+        if (coalesceKey != null) {
+            waitingByKey.put(coalesceKey, run);
+        }
+        return Submission.QUEUED;
+    }
+
+    @Override
+    public RunJob take() throws InterruptedException {
+        QueuedRun run = queue.take();
+        synchronized (this) {
+            // Once taken, later webhooks for the workspace must queue behind this execution
+            if (run.coalesceKey != null) {
+                waitingByKey.remove(run.coalesceKey, run);
+            }
+            return new RunJob(String.valueOf(run.sequence), run.webhook, run.route, run.coalesced, run.enqueuedAt, 1);
+        }
+    }
+
+    @Override
+    public void complete(RunJob job) {
+        // Nothing is held once the run has been taken
+    }
+
+    @Override
+    public void release(RunJob job) {
+        // Only called at shutdown, when the in-memory queue is going away anyway
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public synchronized List<TerraformWebhook> queuedOnThisNode(String runId) {
+        List<TerraformWebhook> webhooks = new ArrayList<>();
+        for (QueuedRun run : queue) {
+            if (runId.equals(run.webhook.getRunId())) {
+                webhooks.add(run.webhook);
+            }
+        }
+        return webhooks;
+    }
+
+    private static final class QueuedRun implements Comparable<QueuedRun> {
+        private TerraformWebhook webhook;
+        private PlaybookRoute route;
+        private final List<TerraformWebhook> coalesced = new ArrayList<>();
+        private final String coalesceKey;
+        private final int priority;
+        private final long sequence;
+        private final long enqueuedAt;
+
+        private QueuedRun(TerraformWebhook webhook, PlaybookRoute route, String coalesceKey, int priority,
+                          long sequence, long enqueuedAt) {
+            this.webhook = webhook;
+            this.route = route;
+            this.coalesceKey = coalesceKey;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public int compareTo(QueuedRun other) {
+            int byPriority = Integer.compare(priority, other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.terraform.runtask.service;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+/**
+ * What to do for a run, resolved from the routing table. Built once when the
+ * table is loaded and shared by every run that matches it. A run keeps the
+ * route it was resolved to at submission, also across a reload of the table,
+ * so the playbook it executes is the one its pass and cache decisions used.
+ */
+@Getter
+public class PlaybookRoute {
+
+    private final String name;
+    private final boolean noop;
+    private final String playbook;
+    private final String inventory;
+    /** Extra vars as a JSON document, or {@code null} when the route has none. */
+    private final String extraVarsJson;
+    /** Whether results may be reused by the {@link RunResultCache}. */
+    private final boolean cacheable;
+    private final String message;
+
+    @JsonCreator
+    private PlaybookRoute(@JsonProperty("name") String name,
+                          @JsonProperty("noop") boolean noop,
+                          @JsonProperty("playbook") String playbook,
+                          @JsonProperty("inventory") String inventory,
+                          @JsonProperty("extraVarsJson") String extraVarsJson,
+                          @JsonProperty("cacheable") boolean cacheable,
+                          @JsonProperty("message") String message) {
+        this.name = name;
+        this.noop = noop;
+        this.playbook = playbook;
+        this.inventory = inventory;
+        this.extraVarsJson = extraVarsJson;
+        this.cacheable = cacheable;
+        this.message = message;
+    }
+
+    static PlaybookRoute run(String name, String playbook, String inventory, String extraVarsJson,
+                             boolean cacheable) {
+        return new PlaybookRoute(name, false, playbook, inventory, extraVarsJson, cacheable, null);
+    }
+
+    static PlaybookRoute pass(String name, String message) {
+        return new PlaybookRoute(name, true, null, null, null, false, message);
+    }
+}
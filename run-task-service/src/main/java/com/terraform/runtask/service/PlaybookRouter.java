@@ -0,0 +1,255 @@
+package com.terraform.runtask.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.terraform.runtask.model.RoutingRule;
+import com.terraform.runtask.model.TerraformWebhook;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps organization, workspace and stage to the playbook, inventory and extra
+ * vars a run executes, from the YAML file at {@code runtask.routing.file}:
+ * <pre>
+ * routes:
+ *   - stage: pre_plan
+ *     action: pass
+ *     message: Nothing to check before plan
+ *   - organization: acme
+ *     workspace: networking
+ *     stage: post_apply
+ *     playbook: playbooks/network.yml
+ *     inventory: inventory/network
+ *     extra_vars: {env: prod}
+ * </pre>
+ * The most specific rule wins: a workspace match beats an organization match,
+ * which beats a stage match. Runs that match no rule use
+ * {@code ansible.runner.playbook} and {@code ansible.runner.inventory}.
+ * <p>
+ * The file is parsed and validated once, including that every playbook and
+ * inventory exists, and every route is resolved up front, so routing a run is a
+ * few hash lookups. The file is checked for changes every
+ * {@code reload-interval-ms}. An invalid file fails startup; an invalid edit
+ * is logged and the previous table stays in effect.
+ */
+@Slf4j
+@Component
+public class PlaybookRouter {
+
+    private static final List<String> STAGES = List.of("pre_plan", "post_plan", "pre_apply", "post_apply");
+    private static final String ANY = "*";
+    private static final TypeReference<List<RoutingRule>> RULES = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper;
+    private final ObjectReader ruleReader;
+    private final Path projectPath;
+    private final Path routingFile;
+    private final long reloadIntervalMs;
+    private final PlaybookRoute defaultRoute;
+    private volatile Map<String, PlaybookRoute> routes = Map.of();
+    private FileTime loadedModified;
+    private long loadedSize;
+    private ScheduledExecutorService reloader;
+
+    public PlaybookRouter(
+            ObjectMapper objectMapper,
+            RunWorkspaceManager workspaceManager,
+            @Value("${ansible.runner.playbook}") String playbook,
+            @Value("${ansible.runner.inventory}") String inventory,
+            @Value("${runtask.routing.file:}") String routingFile,
+            @Value("${runtask.routing.reload-interval-ms:5000}") long reloadIntervalMs) {
+        this.objectMapper = objectMapper;
+        this.ruleReader = objectMapper.readerFor(RULES).with(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.projectPath = workspaceManager.getProjectPath();
+        this.routingFile = routingFile.isEmpty() ? null : Paths.get(routingFile).toAbsolutePath().normalize();
+        this.reloadIntervalMs = reloadIntervalMs;
+        this.defaultRoute = PlaybookRoute.run("default", playbook, inventory, null, false);
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (routingFile == null) {
+            return;
+        }
+        FileTime modified = Files.getLastModifiedTime(routingFile);
+        long size = Files.size(routingFile);
+        routes = load();
+        loadedModified = modified;
+        loadedSize = size;
+        log.info("Loaded {} route(s) from {}", routes.size(), routingFile);
+
+        if (reloadIntervalMs > 0) {
+            reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "routing-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reloader.scheduleWithFixedDelay(this::reloadIfChanged, reloadIntervalMs, reloadIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+
+    public PlaybookRoute route(TerraformWebhook webhook) {
+        Map<String, PlaybookRoute> table = routes;
+        if (table.isEmpty()) {
+            return defaultRoute;
+        }
+        String[] workspaces = {webhook.getWorkspaceId(), webhook.getWorkspaceName(), ANY};
+        String[] organizations = {webhook.getOrganizationName(), ANY};
+        String[] stages = {webhook.getStage(), ANY};
+        for (String workspace : workspaces) {
+            if (workspace == null) {
+                continue;
+            }
+            for (String organization : organizations) {
+                if (organization == null) {
+                    continue;
+                }
+                for (String stage : stages) {
+                    if (stage == null) {
+                        continue;
+                    }
+                    PlaybookRoute route = table.get(key(organization, workspace, stage));
+                    if (route != null) {
+                        return route;
+                    }
+                }
+            }
+        }
+        return defaultRoute;
+    }
+
+    private void reloadIfChanged() {
+        try {
+            FileTime modified = Files.getLastModifiedTime(routingFile);
+            long size = Files.size(routingFile);
+            if (modified.equals(loadedModified) && size == loadedSize) {
+                return;
+            }
+            loadedModified = modified;
+            loadedSize = size;
+            routes = load();
+            log.info("Reloaded {} route(s) from {}", routes.size(), routingFile);
+        } catch (Exception e) {
+            log.error("Keeping the previous routing table, {} could not be loaded: {}", routingFile, e.getMessage());
+        }
+    }
+
+    private Map<String, PlaybookRoute> load() throws IOException {
+        Object document;
+        try (Reader reader = Files.newBufferedReader(routingFile)) {
+            document = new Yaml(new SafeConstructor(new LoaderOptions())).load(reader);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid YAML in " + routingFile + ": " + e.getMessage(), e);
+        }
+        if (!(document instanceof Map<?, ?> root) || !(root.get("routes") instanceof List<?>)) {
+            throw new IllegalArgumentException(routingFile + " must contain a 'routes' list");
+        }
+        List<RoutingRule> rules = ruleReader.readValue((JsonNode) objectMapper.valueToTree(root.get("routes")));
+
+        List<String> errors = new ArrayList<>();
+        Map<String, PlaybookRoute> table = new HashMap<>();
+        Map<String, String> definedBy = new HashMap<>();
+        for (int i = 0; i < rules.size(); i++) {
+            RoutingRule rule = rules.get(i);
+            String name = rule.getName() != null ? rule.getName() : "routes[" + i + "]";
+            PlaybookRoute route = resolve(rule, name, errors);
+            String key = key(matchValue(rule.getOrganization()), matchValue(rule.getWorkspace()),
+                    matchValue(rule.getStage()));
+            String previous = definedBy.putIfAbsent(key, name);
+            if (previous != null) {
+                errors.add(name + " matches the same organization, workspace and stage as " + previous);
+            } else if (route != null) {
+                table.put(key, route);
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid routing file " + routingFile + ": " + String.join("; ", errors));
+        }
+        return Map.copyOf(table);
+    }
+
+    private PlaybookRoute resolve(RoutingRule rule, String name, List<String> errors) throws IOException {
+        if (rule.getStage() != null && !ANY.equals(rule.getStage()) && !STAGES.contains(rule.getStage())) {
+            errors.add(name + " has unknown stage '" + rule.getStage() + "', expected one of " + STAGES);
+        }
+        String action = rule.getAction() != null ? rule.getAction() : "run";
+        switch (action) {
+            case "pass" -> {
+                if (rule.getPlaybook() != null || rule.getInventory() != null || rule.getExtraVars() != null
+                        || rule.isCache()) {
+                    errors.add(name + " is a pass rule and cannot set playbook, inventory, extra_vars or cache");
+                    return null;
+                }
+                return PlaybookRoute.pass(name, rule.getMessage() != null
+                        ? rule.getMessage()
+                        : "No Ansible checks configured for this stage (route: " + name + ")");
+            }
+            case "run" -> {
+                String playbook = rule.getPlaybook() != null ? rule.getPlaybook() : defaultRoute.getPlaybook();
+                String inventory = rule.getInventory() != null ? rule.getInventory() : defaultRoute.getInventory();
+                boolean valid = checkPath(name, "playbook", projectPath.resolve("project"), playbook, errors)
+                        & checkPath(name, "inventory", projectPath, inventory, errors);
+                String extraVars = rule.getExtraVars() != null && !rule.getExtraVars().isEmpty()
+                        ? objectMapper.writeValueAsString(rule.getExtraVars())
+                        : null;
+                return valid ? PlaybookRoute.run(name, playbook, inventory, extraVars, rule.isCache()) : null;
+            }
+            default -> {
+                errors.add(name + " has unknown action '" + action + "', expected run or pass");
+                return null;
+            }
+        }
+    }
+
+    private static boolean checkPath(String name, String kind, Path base, String value, List<String> errors) {
+        Path path = Paths.get(value);
+        if (path.isAbsolute() || !base.resolve(path).normalize().startsWith(base)) {
+            errors.add(name + " " + kind + " '" + value + "' must be a relative path inside " + base);
+            return false;
+        }
+        if (!Files.exists(base.resolve(path))) {
+            errors.add(name + " " + kind + " '" + value + "' does not exist under " + base);
+            return false;
+        }
+        return true;
+    }
+
+    private static String matchValue(String value) {
+        return value == null || value.isBlank() ? ANY : value.trim();
+    }
+
+    private static String key(String organization, String workspace, String stage) {
+        return organization + '\u0000' + workspace + '\u0000' + stage;
+    }
+}
@@ -0,0 +1,368 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.config.ExecutionThreads;
+import com.terraform.runtask.model.PlaybookSummary;
+import com.terraform.runtask.model.RunQueueEntry;
+import com.terraform.runtask.model.TerraformCallback;
+import com.terraform.runtask.model.TerraformWebhook;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounded, prioritized queue between the webhook endpoint and ansible-runner.
+ * The controller only enqueues; a dispatcher claims runs from the
+ * {@link RunJobStore} into the {@link RunScheduler}, which hands them to a
+ * fixed pool of workers within the per-organization, workspace and inventory
+ * limits. Each result is reported to TFE through the callback URL.
+ * <p>
+ * With the {@code latest} coalesce policy, a webhook for a workspace and stage
+ * that already has a run waiting in the queue replaces that run's webhook
+ * instead of queuing a second execution; every folded-in task result receives
+ * the callback of the single execution.
+ * <p>
+ * With a shared store, a run reclaimed from a node that died mid-execution is
+ * executed again until {@code runtask.distribution.max-attempts} is reached,
+ * after which its task results are reported as failed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RunExecutionQueue {
+
+    public enum CoalescePolicy {
+        /** Every webhook gets its own execution. */
+        NONE,
+        /** A queued run is superseded by the newest webhook for the same workspace and stage. */
+        LATEST
+    }
+
+    public enum Cancellation {
+        /** Executions of the run are being terminated. */
+        TERMINATING,
+        /** The run is queued on this node and is canceled as soon as it starts. */
+        ARMED,
+        /** The run is already being terminated. */
+        ALREADY_TERMINATING,
+        /** The run is neither executing nor queued on this node. */
+        NOT_FOUND
+    }
+
+    private final AnsibleRunnerService ansibleRunnerService;
+    private final TerraformCallbackService callbackService;
+    private final RunIdempotencyIndex idempotencyIndex;
+    private final ExecutionThreads executionThreads;
+    private final RunTaskMetrics metrics;
+    private final RunHistoryStore historyStore;
+    private final RunJobStore jobStore;
+    private final RunScheduler scheduler;
+    private final PlaybookRouter router;
+    private final RunResultCache resultCache;
+    private final RunSupervisor supervisor;
+
+    @Value("${runtask.queue.capacity:100}")
+    private int capacity;
+
+    @Value("${runtask.queue.workers:4}")
+    private int workers;
+
+    @Value("${runtask.queue.coalesce-policy:none}")
+    private String coalescePolicy;
+
+    @Value("${runtask.distribution.max-attempts:2}")
+    private int maxAttempts;
+
+    @Value("${runtask.scheduler.window:0}")
+    private int schedulerWindow;
+
+    private CoalescePolicy policy;
+    private ExecutorService workerPool;
+    private Thread dispatcher;
+
+    @PostConstruct
+    void start() {
+        policy = CoalescePolicy.valueOf(coalescePolicy.trim().toUpperCase());
+        if (!jobStore.isShared()) {
+            // Nothing is gained by leaving local runs in the store: the scheduler sees the whole queue
+            schedulerWindow = Integer.MAX_VALUE;
+        } else if (schedulerWindow <= 0) {
+            schedulerWindow = 2 * workers;
+        }
+        metrics.gauge("runtask.queue.depth", "Runs waiting for a worker", this::size);
+        workerPool = Executors.newFixedThreadPool(workers, executionThreads.factory("run-worker"));
+        for (int i = 0; i < workers; i++) {
+            workerPool.execute(this::work);
+        }
+        dispatcher = executionThreads.factory("run-dispatcher").newThread(this::dispatch);
+        dispatcher.start();
+        log.info("Run execution queue started (capacity: {}, workers: {}, window: {}, coalesce: {}, store: {}, {} threads)",
+                capacity, workers, schedulerWindow == Integer.MAX_VALUE ? "whole queue" : schedulerWindow, policy, jobStore.getClass().getSimpleName(),
+                executionThreads.isVirtual() ? "virtual" : "platform");
+    }
+
+    @PreDestroy
+    void stop() {
+        dispatcher.interrupt();
+        workerPool.shutdownNow();
+        for (RunJob job : scheduler.drainPending()) {
+            jobStore.release(job);
+        }
+        int queued = jobStore.size();
+        if (queued > 0) {
+            log.warn("Shutting down with {} queued run(s) not executed by this node", queued);
+        }
+    }
+
+    /**
+     * Enqueues a webhook for execution.
+     *
+     * @return {@code false} if the queue is full and the run was not accepted
+     */
+    public boolean submit(TerraformWebhook webhook) {
+        PlaybookRoute route = router.route(webhook);
+        if (route.isNoop()) {
+            pass(webhook, route);
+            return true;
+        }
+        String cacheKey = resultCache.keyFor(webhook, route);
+        if (cacheKey != null) {
+            Optional<RunResultCache.Hit> hit = resultCache.get(cacheKey);
+            if (hit.isPresent()) {
+                reuse(webhook, hit.get());
+                return true;
+            }
+        }
+        String key = policy == CoalescePolicy.LATEST ? coalesceKey(webhook) : null;
+        switch (jobStore.submit(webhook, route, RunScheduler.priorityOf(webhook), key, capacity - scheduler.pending())) {
+            case COALESCED -> metrics.queueCoalesced();
+            case DUPLICATE -> log.info("Run {} (task result {}) is already queued or running, not queuing again",
+                    webhook.getRunId(), webhook.getTaskResultId());
+            case FULL -> {
+                log.warn("Run queue full, rejecting run: {}", webhook.getRunId());
+                metrics.queueRejected();
+                return false;
+            }
+            default -> log.info("Queued run {} (queue depth: {})", webhook.getRunId(), size());
+        }
+        return true;
+    }
+
+    public int size() {
+        return jobStore.size() + scheduler.pending();
+    }
+
+    /**
+     * Cancels {@code runId}, only its {@code stage} when not {@code null}:
+     * terminates its executions on this node, or arms a cancellation for each
+     * of its runs queued on this node. Runs queued anywhere else are not
+     * affected.
+     */
+    public Cancellation cancel(String runId, String stage) {
+        if (supervisor.cancel(runId, stage) > 0) {
+            return Cancellation.TERMINATING;
+        }
+        List<TerraformWebhook> queued = new ArrayList<>(jobStore.queuedOnThisNode(runId));
+        queued.addAll(scheduler.claimedRuns(runId));
+        queued.removeIf(webhook -> stage != null && !stage.equals(String.valueOf(webhook.getStage())));
+        if (queued.isEmpty()) {
+            return supervisor.isTerminating(runId, stage) ? Cancellation.ALREADY_TERMINATING : Cancellation.NOT_FOUND;
+        }
+        for (TerraformWebhook webhook : queued) {
+            supervisor.cancelWhenStarted(runId, String.valueOf(webhook.getStage()));
+        }
+        // A run that started between the two checks did not see the cancellation
+        return supervisor.cancel(runId, stage) > 0 ? Cancellation.TERMINATING : Cancellation.ARMED;
+    }
+
+    public List<RunQueueEntry> snapshot() {
+        return scheduler.snapshot();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Moves claimed runs from the store to the scheduler, keeping at most
+     * {@code runtask.scheduler.window} of them pending on this node when the
+     * store is shared, and all of them otherwise. A run the store has no route
+     * for, queued by an older version, is routed here once.
+     */
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                scheduler.awaitRoom(schedulerWindow);
+                RunJob job = jobStore.take();
+                scheduler.add(job.getRoute() != null ? job : job.withRoute(router.route(job.getWebhook())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Could not claim a run from the queue", e);
+                pause();
+            }
+        }
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            RunJob job;
+            try {
+                job = scheduler.next();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                if (job.getAttempt() > maxAttempts) {
+                    abandon(job);
+                } else {
+                    execute(job.getWebhook(), job.getRoute(), job.getCoalesced(), job.getEnqueuedAt());
+                }
+            } finally {
+                scheduler.release(job);
+                jobStore.complete(job);
+                // Executed or coalesced away: a cancellation armed for these runs has nothing left to cancel
+                disarm(job.getWebhook());
+                job.getCoalesced().forEach(this::disarm);
+            }
+        }
+    }
+
+    /**
+     * Reports a run whose route has nothing to execute as passed right away,
+     * without queuing it or starting ansible-runner.
+     */
+    private void pass(TerraformWebhook webhook, PlaybookRoute route) {
+        log.info("Run {} (stage: {}) matched no-op route {}, reporting passed",
+                webhook.getRunId(), webhook.getStage(), route.getName());
+        metrics.routeShortCircuit(webhook);
+        long now = System.currentTimeMillis();
+        TerraformCallback callback = TerraformCallback.builder()
+                .status("passed")
+                .message(route.getMessage())
+                .build();
+        callbackService.sendCallback(webhook.getTaskResultCallbackUrl(), callback, webhook.getAccessToken());
+        PlaybookSummary summary = new PlaybookSummary();
+        summary.setStatus("successful");
+        idempotencyIndex.markCompleted(webhook, summary.getStatus());
+        historyStore.record(webhook, null, summary, now, now, now);
+    }
+
+    /**
+     * Reports the cached result of an earlier run with the same inputs, without
+     * queuing or executing anything.
+     */
+    private void reuse(TerraformWebhook webhook, RunResultCache.Hit hit) {
+        PlaybookSummary summary = hit.getSummary();
+        long now = System.currentTimeMillis();
+        log.info("Run {} (stage: {}) reuses the cached result of run {} ({})",
+                webhook.getRunId(), webhook.getStage(), hit.getRunId(), summary.getStatus());
+        TerraformCallback callback = TerraformCallback.builder()
+                .status(summary.isSuccessful() ? "passed" : "failed")
+                .message(String.format("Result reused from run_id: %s (same configuration version and playbooks, %ds old) - %s",
+                        hit.getRunId(), (now - hit.getCachedAt()) / 1000, summary.describe()))
+                .url(hit.getOutputUrl())
+                .build();
+        callbackService.sendCallback(webhook.getTaskResultCallbackUrl(), callback, webhook.getAccessToken());
+        idempotencyIndex.markCompleted(webhook, summary.getStatus());
+        historyStore.record(webhook, hit.getRunId(), summary, now, now, now);
+    }
+
+    /**
+     * Reports a run that was reclaimed too many times as failed instead of
+     * executing it again, so TFE is never left waiting for a callback.
+     */
+    private void abandon(RunJob job) {
+        TerraformWebhook webhook = job.getWebhook();
+        log.error("Run {} was claimed {} times without completing, reporting it as failed",
+                webhook.getRunId(), job.getAttempt());
+        long now = System.currentTimeMillis();
+        TerraformCallback callback = TerraformCallback.builder()
+                .status("failed")
+                .message(String.format("Run task execution was lost %d time(s) (node failure), not retried",
+                        job.getAttempt() - 1))
+                .build();
+        callbackService.sendCallback(webhook.getTaskResultCallbackUrl(), callback, webhook.getAccessToken());
+        idempotencyIndex.markCompleted(webhook, "failed");
+        historyStore.record(webhook, null, null, job.getEnqueuedAt(), now, now);
+        for (TerraformWebhook follower : job.getCoalesced()) {
+            callbackService.sendCallback(follower.getTaskResultCallbackUrl(), callback, follower.getAccessToken());
+            idempotencyIndex.markCompleted(follower, "failed");
+            historyStore.record(follower, webhook.getRunId(), null, job.getEnqueuedAt(), now, now);
+        }
+    }
+
+    private void disarm(TerraformWebhook webhook) {
+        if (webhook.getRunId() != null) {
+            supervisor.disarm(webhook.getRunId(), String.valueOf(webhook.getStage()));
+        }
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void execute(TerraformWebhook webhook, PlaybookRoute route, List<TerraformWebhook> coalesced,
+                         long enqueuedAt) {
+        long waited = System.currentTimeMillis() - enqueuedAt;
+        metrics.queueWait(webhook, waited);
+        log.info("Starting run {} after {}ms in queue{}", webhook.getRunId(), waited,
+                coalesced.isEmpty() ? "" : " (" + coalesced.size() + " coalesced)");
+        String status = "failed";
+        PlaybookSummary summary = null;
+        long startedAt = System.currentTimeMillis();
+        // Keyed on the project content as of the start, so an edit during the run is not cached under the new content
+        String cacheKey = resultCache.keyFor(webhook, route);
+        try {
+            summary = ansibleRunnerService.executePlaybookAndCallback(webhook, route, coalesced);
+            status = summary.getStatus();
+            if (cacheKey != null) {
+                resultCache.put(cacheKey, webhook, ansibleRunnerService.getOutputUrl(webhook), summary);
+            }
+        } catch (Exception e) {
+            log.error("=== Error executing Ansible or sending callback for run {} ===", webhook.getRunId(), e);
+
+            TerraformCallback callback = TerraformCallback.builder()
+                    .status("failed")
+                    .message("Failed to execute Ansible: " + e.getMessage())
+                    .build();
+
+            List<TerraformWebhook> all = new ArrayList<>(coalesced);
+            all.add(webhook);
+            for (TerraformWebhook target : all) {
+                callbackService.sendCallback(
+                    target.getTaskResultCallbackUrl(),
+                    callback,
+                    target.getAccessToken()
+                );
+            }
+        } finally {
+            long finishedAt = System.currentTimeMillis();
+            idempotencyIndex.markCompleted(webhook, status);
+            historyStore.record(webhook, null, summary, enqueuedAt, startedAt, finishedAt);
+            for (TerraformWebhook follower : coalesced) {
+                idempotencyIndex.markCompleted(follower, status);
+                historyStore.record(follower, webhook.getRunId(), summary, enqueuedAt, startedAt, finishedAt);
+            }
+        }
+    }
+
+    private static String coalesceKey(TerraformWebhook webhook) {
+        String workspace = webhook.getWorkspaceId() != null ? webhook.getWorkspaceId() : webhook.getWorkspaceName();
+        return workspace + "/" + webhook.getStage();
+    }
+}
@@ -0,0 +1,356 @@
+package com.terraform.runtask.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.model.PlaybookSummary;
+import com.terraform.runtask.model.RunHistoryPage;
+import com.terraform.runtask.model.RunRecord;
+import com.terraform.runtask.model.TerraformWebhook;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded history of executed task results (H2 by default, see
+ * {@code spring.datasource.url}). Every task result is one row, including those
+ * coalesced into another run's execution.
+ * <p>
+ * Listing is newest first with keyset pagination on {@code (finished_at, id)},
+ * so deep pages cost the same as the first one. Retention deletes rows older than
+ * {@code retention-days} and beyond {@code max-rows}, in small batches, and with
+ * them every run directory ({@code ident}) that no remaining row refers to.
+ * The store reuses freed pages and compacts the file when it closes.
+ */
+@Slf4j
+@Component
+public class RunHistoryStore {
+
+    private static final int DELETE_BATCH = 10_000;
+    private static final TypeReference<Map<String, PlaybookSummary.HostStats>> HOSTS = new TypeReference<>() {};
+
+    private static final String COLUMNS = "id, task_result_id, run_id, organization_name, workspace_id, workspace_name, "
+            + "stage, enforcement_level, result, runner_status, coalesced_into, queued_at, started_at, finished_at, "
+            + "summary, hosts, ident";
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final RunWorkspaceManager workspaceManager;
+    private final int retentionDays;
+    private final long maxRows;
+    private final long retentionIntervalMs;
+    private final RowMapper<RunRecord> rowMapper = this::mapRow;
+    private ScheduledExecutorService retention;
+
+    public RunHistoryStore(
+            JdbcTemplate jdbc,
+            ObjectMapper objectMapper,
+            RunWorkspaceManager workspaceManager,
+            @Value("${runtask.history.retention-days:30}") int retentionDays,
+            @Value("${runtask.history.max-rows:1000000}") long maxRows,
+            @Value("${runtask.history.retention-interval-ms:3600000}") long retentionIntervalMs) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.workspaceManager = workspaceManager;
+        this.retentionDays = retentionDays;
+        this.maxRows = maxRows;
+        this.retentionIntervalMs = retentionIntervalMs;
+    }
+
+    @PostConstruct
+    void start() {
+        jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS run_history (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    task_result_id VARCHAR(255),
+                    run_id VARCHAR(255),
+                    organization_name VARCHAR(255),
+                    workspace_id VARCHAR(255),
+                    workspace_name VARCHAR(255),
+                    stage VARCHAR(64),
+                    enforcement_level VARCHAR(32),
+                    result VARCHAR(32) NOT NULL,
+                    runner_status VARCHAR(32),
+                    coalesced_into VARCHAR(255),
+                    queued_at BIGINT NOT NULL,
+                    started_at BIGINT NOT NULL,
+                    finished_at BIGINT NOT NULL,
+                    summary VARCHAR(4000),
+                    hosts CLOB
+                )""");
+        // Descending, so newest-first pages are read straight off the index
+        jdbc.execute("CREATE INDEX IF NOT EXISTS run_history_finished ON run_history (finished_at DESC, id DESC)");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS run_history_org "
+                + "ON run_history (organization_name, finished_at DESC, id DESC)");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS run_history_workspace "
+                + "ON run_history (organization_name, workspace_name, finished_at DESC, id DESC)");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS run_history_stage ON run_history (stage, finished_at DESC, id DESC)");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS run_history_run ON run_history (run_id)");
+        addIdentColumn();
+        jdbc.execute("CREATE INDEX IF NOT EXISTS run_history_ident ON run_history (ident)");
+
+        retention = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "run-history-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retention.scheduleWithFixedDelay(this::applyRetention,
+                Math.min(60_000, retentionIntervalMs), retentionIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Run history store ready ({} rows, retention: {} days / {} rows)", count(), retentionDays, maxRows);
+    }
+
+    @PreDestroy
+    void stop() {
+        retention.shutdownNow();
+    }
+
+    /**
+     * Records the outcome of one task result. Never throws: losing a history row
+     * must not fail the run.
+     */
+    public void record(TerraformWebhook webhook, String coalescedInto, PlaybookSummary summary,
+                       long queuedAt, long startedAt, long finishedAt) {
+        try {
+            boolean passed = summary != null && summary.isSuccessful();
+            jdbc.update("""
+                    INSERT INTO run_history (task_result_id, run_id, organization_name, workspace_id, workspace_name,
+                        stage, enforcement_level, result, runner_status, coalesced_into, queued_at, started_at,
+                        finished_at, summary, hosts, ident)
+                    VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)""",
+                    webhook.getTaskResultId(), webhook.getRunId(), webhook.getOrganizationName(),
+                    webhook.getWorkspaceId(), webhook.getWorkspaceName(), webhook.getStage(),
+                    webhook.getTaskResultEnforcementLevel(), passed ? "passed" : "failed",
+                    summary != null ? summary.getStatus() : "failed", coalescedInto,
+                    queuedAt, startedAt, finishedAt,
+                    summary != null ? truncate(summary.describe(), 4000) : null,
+                    summary != null ? objectMapper.writeValueAsString(summary.getHosts()) : null,
+                    summary != null ? summary.getIdent() : null);
+        } catch (Exception e) {
+            log.error("Failed to record run history for run {}", webhook.getRunId(), e);
+        }
+    }
+
+    /**
+     * Lists runs newest first. All filters are optional; {@code workspace} is a
+     * workspace name and only uses the workspace index together with
+     * {@code organization}.
+     */
+    public RunHistoryPage list(String organization, String workspace, String stage, String result,
+                               Instant from, Instant to, String cursor, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM run_history WHERE 1=1");
+        List<Object> args = new ArrayList<>();
+        if (organization != null) {
+            sql.append(" AND organization_name = ?");
+            args.add(organization);
+        }
+        if (workspace != null) {
+            sql.append(" AND workspace_name = ?");
+            args.add(workspace);
+        }
+        if (stage != null) {
+            sql.append(" AND stage = ?");
+            args.add(stage);
+        }
+        if (result != null) {
+            sql.append(" AND result = ?");
+            args.add(result);
+        }
+        if (from != null) {
+            sql.append(" AND finished_at >= ?");
+            args.add(from.toEpochMilli());
+        }
+        if (to != null) {
+            sql.append(" AND finished_at < ?");
+            args.add(to.toEpochMilli());
+        }
+        if (cursor != null) {
+            long[] position = decodeCursor(cursor);
+            // The leading bound lets the index seek to the cursor instead of filtering
+            sql.append(" AND finished_at <= ? AND (finished_at < ? OR id < ?)");
+            args.add(position[0]);
+            args.add(position[0]);
+            args.add(position[1]);
+        }
+        sql.append(" ORDER BY finished_at DESC, id DESC FETCH FIRST ? ROWS ONLY");
+        // One extra row tells whether another page exists
+        args.add(limit + 1);
+
+        List<RunRecord> rows = jdbc.query(sql.toString(), rowMapper, args.toArray());
+        String next = null;
+        if (rows.size() > limit) {
+            rows = new ArrayList<>(rows.subList(0, limit));
+            RunRecord last = rows.get(limit - 1);
+            next = encodeCursor(last.getFinishedAt().toEpochMilli(), last.getId());
+        }
+        return new RunHistoryPage(rows, next);
+    }
+
+    /**
+     * Every recorded task result of a TFE run, newest first.
+     */
+    public List<RunRecord> findByRunId(String runId) {
+        return jdbc.query("SELECT " + COLUMNS + " FROM run_history WHERE run_id = ? ORDER BY finished_at DESC, id DESC",
+                rowMapper, runId);
+    }
+
+    public long count() {
+        Long count = jdbc.queryForObject("SELECT COUNT(*) FROM run_history", Long.class);
+        return count != null ? count : 0;
+    }
+
+    void applyRetention() {
+        try {
+            long removed = 0;
+            if (retentionDays > 0) {
+                long cutoff = Instant.now().minus(Duration.ofDays(retentionDays)).toEpochMilli();
+                removed += deleteInBatches("finished_at < ?", cutoff);
+            }
+            if (maxRows > 0) {
+                List<Long> boundary = jdbc.queryForList(
+                        "SELECT id FROM run_history ORDER BY id DESC OFFSET ? ROWS FETCH FIRST 1 ROWS ONLY",
+                        Long.class, maxRows);
+                if (!boundary.isEmpty()) {
+                    removed += deleteInBatches("id <= ?", boundary.get(0));
+                }
+            }
+            if (removed > 0) {
+                log.info("Run history retention removed {} row(s)", removed);
+            }
+        } catch (Exception e) {
+            log.error("Run history retention failed", e);
+        }
+    }
+
+    /**
+     * Deletes the rows matching {@code condition} in id order, one batch at a
+     * time, then the run directories of each batch that no remaining row refers
+     * to (coalesced and reused results share their execution's directory).
+     */
+    private long deleteInBatches(String condition, long bound) {
+        long total = 0;
+        while (true) {
+            List<Map<String, Object>> batch = jdbc.queryForList(
+                    "SELECT id, ident FROM run_history WHERE " + condition + " ORDER BY id FETCH FIRST ? ROWS ONLY",
+                    bound, DELETE_BATCH);
+            if (batch.isEmpty()) {
+                return total;
+            }
+            long last = ((Number) batch.get(batch.size() - 1).get("ID")).longValue();
+            // Short transactions keep the store responsive while a large backlog is trimmed
+            total += jdbc.update("DELETE FROM run_history WHERE id <= ? AND " + condition, last, bound);
+            Set<String> idents = new HashSet<>();
+            batch.forEach(row -> {
+                if (row.get("IDENT") != null) {
+                    idents.add((String) row.get("IDENT"));
+                }
+            });
+            int directories = 0;
+            for (String ident : idents) {
+                Integer references = jdbc.queryForObject("SELECT COUNT(*) FROM run_history WHERE ident = ?",
+                        Integer.class, ident);
+                if ((references == null || references == 0) && workspaceManager.delete(ident)) {
+                    directories++;
+                }
+            }
+            if (directories > 0) {
+                log.info("Run history retention removed {} run directory(ies)", directories);
+            }
+            if (batch.size() < DELETE_BATCH) {
+                return total;
+            }
+        }
+    }
+
+    /**
+     * Adds the {@code ident} column to a store created before it existed. Those
+     * rows get the name their run directory had: the executed run's ID and
+     * stage, without the suffix of repeated deliveries.
+     */
+    private void addIdentColumn() {
+        Integer exists = jdbc.queryForObject("""
+                SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS
+                WHERE TABLE_NAME = 'RUN_HISTORY' AND COLUMN_NAME = 'IDENT'""", Integer.class);
+        if (exists != null && exists > 0) {
+            return;
+        }
+        jdbc.execute("ALTER TABLE run_history ADD COLUMN ident VARCHAR(255)");
+        int updated = jdbc.update("""
+                UPDATE run_history
+                SET ident = REGEXP_REPLACE(COALESCE(coalesced_into, run_id) || '-' || COALESCE(stage, 'null'),
+                    '[^A-Za-z0-9._-]', '_')
+                WHERE run_id IS NOT NULL AND summary IS NOT NULL""");
+        log.info("Added run directory references to {} run history row(s)", updated);
+    }
+
+    private RunRecord mapRow(ResultSet rs, int rowNum) throws SQLException {
+        long queuedAt = rs.getLong("queued_at");
+        long startedAt = rs.getLong("started_at");
+        long finishedAt = rs.getLong("finished_at");
+        Map<String, PlaybookSummary.HostStats> hosts = null;
+        String hostsJson = rs.getString("hosts");
+        if (hostsJson != null) {
+            try {
+                hosts = objectMapper.readValue(hostsJson, HOSTS);
+            } catch (Exception e) {
+                log.warn("Unreadable host results in run history row {}", rs.getLong("id"));
+            }
+        }
+        return RunRecord.builder()
+                .id(rs.getLong("id"))
+                .taskResultId(rs.getString("task_result_id"))
+                .runId(rs.getString("run_id"))
+                .organizationName(rs.getString("organization_name"))
+                .workspaceId(rs.getString("workspace_id"))
+                .workspaceName(rs.getString("workspace_name"))
+                .stage(rs.getString("stage"))
+                .enforcementLevel(rs.getString("enforcement_level"))
+                .result(rs.getString("result"))
+                .runnerStatus(rs.getString("runner_status"))
+                .coalescedInto(rs.getString("coalesced_into"))
+                .queuedAt(Instant.ofEpochMilli(queuedAt))
+                .startedAt(Instant.ofEpochMilli(startedAt))
+                .finishedAt(Instant.ofEpochMilli(finishedAt))
+                .queueMs(startedAt - queuedAt)
+                .durationMs(finishedAt - startedAt)
+                .summary(rs.getString("summary"))
+                .hosts(hosts)
+                .ident(rs.getString("ident"))
+                .build();
+    }
+
+    private static String encodeCursor(long finishedAt, long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((finishedAt + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long[] decodeCursor(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            return new long[] {Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    private static String truncate(String value, int max) {
+        return value.length() <= max ? value : value.substring(0, max);
+    }
+}
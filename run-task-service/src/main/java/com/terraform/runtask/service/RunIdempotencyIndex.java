@@ -0,0 +1,228 @@
+package com.terraform.runtask.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.model.TerraformWebhook;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Idempotency index keyed on {@code task_result_id}. TFE retries webhook
+ * delivery, and a retried delivery must attach to the execution that already
+ * exists instead of starting a second one and sending a second callback.
+ * <p>
+ * Completed entries expire a TTL after completion. In-flight entries stay until
+ * they complete or are forgotten, so a redelivery of a run that waited longer
+ * than the TTL still attaches to it. When a store file is configured, completed entries
+ * are appended to a JSON-lines journal and reloaded at startup. In-flight
+ * entries are never persisted: the queue is in memory, so after a restart a
+ * redelivery has to run again.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RunIdempotencyIndex {
+
+    public enum Admission {
+        /** First delivery; the caller should execute it. */
+        NEW,
+        /** An execution for this task result is queued or running. */
+        DUPLICATE_IN_FLIGHT,
+        /** This task result already completed and its callback was sent. */
+        DUPLICATE_COMPLETED
+    }
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${runtask.idempotency.ttl-ms:21600000}")
+    private long ttlMs;
+
+    @Value("${runtask.idempotency.store-file:}")
+    private String storeFile;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper;
+    private Path journal;
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!storeFile.isEmpty()) {
+            journal = Paths.get(storeFile).toAbsolutePath();
+            // Appends open the journal directly, so its directory must exist before the first one
+            Files.createDirectories(journal.getParent());
+            load();
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idempotency-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, Math.min(ttlMs, 60_000));
+        sweeper.scheduleWithFixedDelay(this::evictExpired, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Records a delivery. Webhooks without a {@code task_result_id} (manual test
+     * runs) are never deduplicated.
+     */
+    public Admission register(TerraformWebhook webhook) {
+        String key = webhook.getTaskResultId();
+        if (key == null || key.isEmpty()) {
+            return Admission.NEW;
+        }
+        long now = System.currentTimeMillis();
+        Entry fresh = new Entry(webhook.getRunId(), now);
+        Entry existing = entries.compute(key, (k, current) ->
+                current == null || current.isExpired(now, ttlMs) ? fresh : current);
+        if (existing == fresh) {
+            return Admission.NEW;
+        }
+        log.info("Duplicate delivery of task result {} (run {}, {})", key, existing.runId,
+                existing.status == null ? "in flight" : "completed: " + existing.status);
+        return existing.status == null ? Admission.DUPLICATE_IN_FLIGHT : Admission.DUPLICATE_COMPLETED;
+    }
+
+    /**
+     * Drops an in-flight entry whose execution was never accepted, so the next
+     * delivery is treated as new.
+     */
+    public void forget(TerraformWebhook webhook) {
+        if (webhook.getTaskResultId() != null) {
+            entries.computeIfPresent(webhook.getTaskResultId(), (k, e) -> e.status == null ? null : e);
+        }
+    }
+
+    public void markCompleted(TerraformWebhook webhook, String status) {
+        String key = webhook.getTaskResultId();
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = entries.compute(key, (k, current) -> {
+            Entry completed = current != null ? current : new Entry(webhook.getRunId(), now);
+            completed.status = status;
+            completed.updatedAt = now;
+            return completed;
+        });
+        append(key, entry);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        int before = entries.size();
+        entries.values().removeIf(e -> e.isExpired(now, ttlMs));
+        int evicted = before - entries.size();
+        if (evicted > 0) {
+            log.debug("Evicted {} expired idempotency entries", evicted);
+            compact();
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(journal)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    JsonNode node = objectMapper.readTree(line);
+                    Entry entry = new Entry(node.path("run_id").asText(null), node.path("updated_at").asLong());
+                    entry.status = node.path("status").asText("failed");
+                    if (!entry.isExpired(now, ttlMs)) {
+                        entries.put(node.path("task_result_id").asText(), entry);
+                    }
+                } catch (IOException e) {
+                    log.warn("Skipping corrupt idempotency journal line: {}", e.getMessage());
+                }
+            }
+        }
+        log.info("Loaded {} completed task result(s) from {}", entries.size(), journal);
+        compact();
+    }
+
+    private synchronized void append(String key, Entry entry) {
+        if (journal == null) {
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(toJson(key, entry));
+            writer.newLine();
+        } catch (IOException e) {
+            log.error("Failed to persist idempotency entry for {}", key, e);
+        }
+    }
+
+    private synchronized void compact() {
+        if (journal == null) {
+            return;
+        }
+        Path tmp = journal.resolveSibling(journal.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    if (e.getValue().status != null) {
+                        writer.write(toJson(e.getKey(), e.getValue()));
+                        writer.newLine();
+                    }
+                }
+            }
+            Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to compact idempotency journal {}", journal, e);
+        }
+    }
+
+    private String toJson(String key, Entry entry) throws IOException {
+        return objectMapper.writeValueAsString(Map.of(
+                "task_result_id", key,
+                "run_id", String.valueOf(entry.runId),
+                "status", entry.status,
+                "updated_at", entry.updatedAt));
+    }
+
+    private static final class Entry {
+        private final String runId;
+        private volatile String status;
+        private volatile long updatedAt;
+
+        private Entry(String runId, long updatedAt) {
+            this.runId = runId;
+            this.updatedAt = updatedAt;
+        }
+
+        private boolean isExpired(long now, long ttlMs) {
+            return status != null && now - updatedAt > ttlMs;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.model.TerraformWebhook;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * A run claimed from the {@link RunJobStore} by this node: the webhook to
+ * execute, the route it was resolved to when submitted, the webhooks coalesced
+ * into it, and how many times it has been claimed (more than once when a
+ * previous owner's lease expired).
+ */
+@Getter
+public class RunJob {
+
+    private final String id;
+    private final TerraformWebhook webhook;
+    private final PlaybookRoute route;
+    private final List<TerraformWebhook> coalesced;
+    private final long enqueuedAt;
+    private final int attempt;
+
+    public RunJob(String id, TerraformWebhook webhook, PlaybookRoute route, List<TerraformWebhook> coalesced,
+                  long enqueuedAt, int attempt) {
+        this.id = id;
+        this.webhook = webhook;
+        this.route = route;
+        this.coalesced = List.copyOf(coalesced);
+        this.enqueuedAt = enqueuedAt;
+        this.attempt = attempt;
+    }
+
+    /**
+     * The same job with {@code route}, for jobs whose store did not record one.
+     */
+    public RunJob withRoute(PlaybookRoute route) {
+        return new RunJob(id, webhook, route, coalesced, enqueuedAt, attempt);
+    }
+}
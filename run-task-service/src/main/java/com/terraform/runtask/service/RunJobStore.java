@@ -0,0 +1,70 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.model.TerraformWebhook;
+
+import java.util.List;
+
+/**
+ * Where queued runs wait until a worker claims them. Selected with
+ * {@code runtask.distribution.backend}:
+ * <ul>
+ *   <li>{@code local} (default): an in-memory priority queue, runs never leave this node;</li>
+ *   <li>{@code jdbc}: a table in the shared database. Nodes claim runs under a
+ *       lease that they renew while the run executes. When a node dies its
+ *       leases expire and another node reclaims the runs.</li>
+ * </ul>
+ * Ordering is the same for every backend: priority first (mandatory before
+ * advisory), then arrival.
+ */
+public interface RunJobStore {
+
+    enum Submission {
+        QUEUED,
+        /** Folded into a run for the same workspace and stage that was still waiting. */
+        COALESCED,
+        /** The same task result is already queued or running somewhere. */
+        DUPLICATE,
+        FULL
+    }
+
+    /**
+     * Queues {@code webhook} to execute {@code route}, which the store keeps
+     * with the run; coalescing replaces both with the newer ones.
+     */
+    Submission submit(TerraformWebhook webhook, PlaybookRoute route, int priority, String coalesceKey, int capacity);
+
+    /**
+     * Blocks until a run can be claimed by this node.
+     */
+    RunJob take() throws InterruptedException;
+
+    /**
+     * Releases a claimed run once it has been executed and reported.
+     */
+    void complete(RunJob job);
+
+    /**
+     * Puts a claimed run that never started back in the queue, without
+     * counting the claim as an attempt.
+     */
+    void release(RunJob job);
+
+    /**
+     * Number of runs waiting to be claimed.
+     */
+    int size();
+
+    /**
+     * Webhooks of {@code runId} waiting in this store that only this node can
+     * claim; the ones it has claimed already are in the {@link RunScheduler}.
+     */
+    List<TerraformWebhook> queuedOnThisNode(String runId);
+
+    /**
+     * Whether other nodes claim from this store too, so runs claimed here are
+     * kept from them.
+     */
+    default boolean isShared() {
+        return false;
+    }
+}
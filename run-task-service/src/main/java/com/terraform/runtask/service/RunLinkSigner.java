@@ -0,0 +1,101 @@
+package com.terraform.runtask.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Access to what runs produced: output, job events, history and the queue.
+ * Callers either send {@code Authorization: Bearer} with
+ * {@code runtask.read-access.token}, or follow a link signed with it. The
+ * callback links to a run's output with an {@code expires} time and an
+ * HMAC-SHA256 {@code signature} over the run ID, stage and expiry, so the link
+ * opens from TFE without the token and only for that run. Without a token,
+ * none of these endpoints is served.
+ */
+@Slf4j
+@Component
+public class RunLinkSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final byte[] token;
+    private final SecretKeySpec key;
+    private final long linkTtlSeconds;
+
+    public RunLinkSigner(
+            @Value("${runtask.read-access.token:}") String token,
+            @Value("${runtask.read-access.link-ttl-ms:604800000}") long linkTtlMs) {
+        if (token.isEmpty()) {
+            log.info("runtask.read-access.token is not set, run output, history and queue endpoints are disabled");
+            this.token = null;
+            this.key = null;
+        } else {
+            this.token = token.getBytes(StandardCharsets.UTF_8);
+            this.key = new SecretKeySpec(this.token, ALGORITHM);
+        }
+        this.linkTtlSeconds = linkTtlMs / 1000;
+    }
+
+    public boolean isEnabled() {
+        return token != null;
+    }
+
+    public boolean isValidToken(String presented) {
+        return token != null && presented != null
+                && MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Expiry, as epoch seconds, of a link signed now.
+     */
+    public long expiresAt() {
+        return System.currentTimeMillis() / 1000 + linkTtlSeconds;
+    }
+
+    public String sign(String runId, String stage, long expires) {
+        if (key == null) {
+            throw new IllegalStateException("runtask.read-access.token is not set");
+        }
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            byte[] signature = mac.doFinal((runId + "\n" + (stage != null ? stage : "") + "\n" + expires)
+                    .getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(signature);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+        }
+    }
+
+    /**
+     * Whether {@code signature} was issued for this run and stage and has not
+     * expired. A link signed without a stage covers every stage of the run.
+     */
+    public boolean verify(String runId, String stage, String expires, String signature) {
+        if (key == null || signature == null || expires == null) {
+            return false;
+        }
+        long expiry;
+        byte[] presented;
+        try {
+            expiry = Long.parseLong(expires);
+            presented = HexFormat.of().parseHex(signature);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (expiry < System.currentTimeMillis() / 1000) {
+            return false;
+        }
+        byte[] forStage = HexFormat.of().parseHex(sign(runId, stage, expiry));
+        return MessageDigest.isEqual(presented, forStage)
+                || stage != null && MessageDigest.isEqual(presented, HexFormat.of().parseHex(sign(runId, null, expiry)));
+    }
+}
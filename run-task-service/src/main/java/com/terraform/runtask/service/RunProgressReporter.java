@@ -0,0 +1,254 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.model.TerraformCallback;
+import com.terraform.runtask.model.TerraformWebhook;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps TFE informed while a playbook runs. Each execution gets a
+ * {@link Tracker}: it sends a {@code running} update as soon as the run starts,
+ * then folds the live event stream into at most one progress update per task
+ * result every {@code runtask.progress.min-interval-ms}. Only the latest state
+ * is sent, and never while the previous update is still in flight.
+ * {@code runtask.progress.max-per-second} caps progress PATCHes across all runs,
+ * the initial {@code running} update included; an update that finds no budget
+ * waits for the next flush instead.
+ * <p>
+ * Progress updates are best effort. {@link Tracker#finish()} stops the tracker
+ * and completes once its in-flight update has settled, so the final result is
+ * always sent after, and never overtaken by, a {@code running} update.
+ */
+@Slf4j
+@Component
+public class RunProgressReporter {
+
+    private static final int MAX_FAILING_HOSTS = 5;
+    private static final String STARTED = "Ansible playbook execution started";
+
+    private final TerraformCallbackService callbackService;
+    private final RunTaskMetrics metrics;
+    private final boolean enabled;
+    private final long minIntervalNanos;
+    private final Duration timeout;
+    private final double maxPerSecond;
+
+    private final Set<Tracker> active = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService flusher;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    public RunProgressReporter(
+            TerraformCallbackService callbackService,
+            RunTaskMetrics metrics,
+            @Value("${runtask.progress.enabled:true}") boolean enabled,
+            @Value("${runtask.progress.min-interval-ms:15000}") long minIntervalMs,
+            @Value("${runtask.progress.timeout-ms:5000}") long timeoutMs,
+            @Value("${runtask.progress.max-per-second:10}") double maxPerSecond) {
+        this.callbackService = callbackService;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMs);
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.maxPerSecond = maxPerSecond;
+        this.tokens = maxPerSecond;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            log.info("Progress updates disabled, TFE hears only the final result");
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tick = Math.max(100, Math.min(1000, TimeUnit.NANOSECONDS.toMillis(minIntervalNanos) / 4));
+        flusher.scheduleWithFixedDelay(this::flush, tick, tick, TimeUnit.MILLISECONDS);
+        metrics.gauge("runtask.progress.tracked", "Executions currently reporting progress to TFE", active::size);
+        log.info("Progress updates every {}ms per task result, at most {}/s overall",
+                TimeUnit.NANOSECONDS.toMillis(minIntervalNanos), maxPerSecond > 0 ? maxPerSecond : "unlimited");
+    }
+
+    @PreDestroy
+    void stop() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts tracking the execution of {@code executed} and sends the initial
+     * {@code running} update to its task result and those of the webhooks
+     * coalesced into it, or leaves it to the flusher when the budget is spent.
+     */
+    public Tracker start(TerraformWebhook executed, List<TerraformWebhook> coalesced) {
+        List<TerraformWebhook> targets = new ArrayList<>();
+        for (TerraformWebhook webhook : concat(executed, coalesced)) {
+            if (webhook.getTaskResultCallbackUrl() != null && !webhook.getTaskResultCallbackUrl().isEmpty()) {
+                targets.add(webhook);
+            }
+        }
+        Tracker tracker = new Tracker(executed, targets);
+        if (enabled && !targets.isEmpty()) {
+            if (tryAcquire(targets.size())) {
+                tracker.send(STARTED, "");
+            } else {
+                tracker.dirty = true;
+            }
+            active.add(tracker);
+        }
+        return tracker;
+    }
+
+    private void flush() {
+        long now = System.nanoTime();
+        for (Tracker tracker : active) {
+            try {
+                tracker.flush(now);
+            } catch (RuntimeException e) {
+                log.warn("Progress update for run {} failed: {}", tracker.executed.getRunId(), e.toString());
+            }
+        }
+    }
+
+    /**
+     * Takes {@code count} PATCHes from the shared budget, refilled continuously
+     * up to one second's worth.
+     */
+    private synchronized boolean tryAcquire(int count) {
+        if (maxPerSecond <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(maxPerSecond, tokens + (now - refilledAt) / 1e9 * maxPerSecond);
+        refilledAt = now;
+        // A run with more targets than the whole budget still gets through once the bucket is full
+        if (tokens < Math.min(count, maxPerSecond)) {
+            return false;
+        }
+        tokens -= count;
+        return true;
+    }
+
+    private static List<TerraformWebhook> concat(TerraformWebhook executed, List<TerraformWebhook> coalesced) {
+        List<TerraformWebhook> all = new ArrayList<>(1 + coalesced.size());
+        all.add(executed);
+        all.addAll(coalesced);
+        return all;
+    }
+
+    private static String describe(AnsibleEventParser.Progress progress) {
+        StringBuilder sb = new StringBuilder()
+                .append(progress.tasks()).append(" task(s) started");
+        if (progress.currentTask() != null) {
+            sb.append(", current: ").append(progress.currentTask());
+        }
+        sb.append("; ").append(progress.hosts()).append(" host(s): ")
+                .append("ok=").append(progress.ok())
+                .append(" changed=").append(progress.changed())
+                .append(" failed=").append(progress.failed())
+                .append(" unreachable=").append(progress.unreachable())
+                .append(" skipped=").append(progress.skipped());
+        List<String> failing = progress.failingHosts();
+        if (!failing.isEmpty()) {
+            sb.append("; failing hosts: ").append(String.join(", ", failing.subList(0, Math.min(failing.size(), MAX_FAILING_HOSTS))));
+            if (failing.size() > MAX_FAILING_HOSTS) {
+                sb.append(" (+").append(failing.size() - MAX_FAILING_HOSTS).append(" more)");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String elapsed(long nanos) {
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+        return seconds >= 60 ? (seconds / 60) + "m" + (seconds % 60) + "s" : seconds + "s";
+    }
+
+    /**
+     * Progress of one execution. Receives {@link AnsibleEventParser.Progress}
+     * snapshots on the worker thread; the flusher thread sends them.
+     */
+    public final class Tracker implements Consumer<AnsibleEventParser.Progress> {
+        private final TerraformWebhook executed;
+        private final List<TerraformWebhook> targets;
+        private final long startedAt = System.nanoTime();
+        private volatile AnsibleEventParser.Progress latest;
+        private volatile boolean dirty;
+        private long nextDue = startedAt;
+        private CompletableFuture<Void> inFlight = CompletableFuture.completedFuture(null);
+        private boolean finished;
+
+        private Tracker(TerraformWebhook executed, List<TerraformWebhook> targets) {
+            this.executed = executed;
+            this.targets = targets;
+        }
+
+        @Override
+        public void accept(AnsibleEventParser.Progress progress) {
+            latest = progress;
+            dirty = true;
+        }
+
+        /**
+         * Stops progress updates for this execution.
+         *
+         * @return completes, never exceptionally, once the last update sent has settled
+         */
+        public synchronized CompletableFuture<Void> finish() {
+            finished = true;
+            if (active.remove(this) && dirty) {
+                metrics.progressUpdate("superseded");
+            }
+            return inFlight;
+        }
+
+        private synchronized void flush(long now) {
+            if (finished || !dirty || now - nextDue < 0 || !inFlight.isDone() || !tryAcquire(targets.size())) {
+                return;
+            }
+            dirty = false;
+            AnsibleEventParser.Progress progress = latest;
+            if (progress == null) {
+                // The initial update, held back for budget, and no events since
+                send(STARTED, "");
+                return;
+            }
+            send("Ansible playbook running", " - " + elapsed(now - startedAt) + " elapsed, " + describe(progress));
+        }
+
+        private synchronized void send(String headline, String detail) {
+            nextDue = System.nanoTime() + minIntervalNanos;
+            CompletableFuture<?>[] sends = new CompletableFuture<?>[targets.size()];
+            for (int i = 0; i < sends.length; i++) {
+                TerraformWebhook webhook = targets.get(i);
+                String runRef = webhook == executed
+                        ? String.format("run_id: %s", executed.getRunId())
+                        : String.format("run_id: %s, coalesced into run_id: %s", webhook.getRunId(), executed.getRunId());
+                TerraformCallback callback = TerraformCallback.builder()
+                        .status("running")
+                        .message(String.format("%s (%s)%s", headline, runRef, detail))
+                        .build();
+                sends[i] = callbackService.sendProgress(webhook.getTaskResultCallbackUrl(), callback,
+                        webhook.getAccessToken(), timeout);
+            }
+            inFlight = CompletableFuture.allOf(sends);
+        }
+    }
+}
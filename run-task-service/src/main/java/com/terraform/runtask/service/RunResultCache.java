@@ -0,0 +1,283 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.model.PlaybookSummary;
+import com.terraform.runtask.model.TerraformWebhook;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in cache of pass/fail results for read-only checks, enabled with
+ * {@code runtask.result-cache.enabled} and per route with {@code cache: true}.
+ * <p>
+ * The key is a SHA-256 digest of the organization, workspace, stage and
+ * configuration version of the webhook, the route's playbook, inventory and
+ * extra vars, and a fingerprint of the project content (playbooks, roles,
+ * inventories). Webhooks without a {@code configuration_version_id} are never
+ * cached. Workspace variables are not part of the payload, so a route should
+ * only be cached when its result does not depend on them.
+ * <p>
+ * The project is re-fingerprinted every {@code check-interval-ms}; only files
+ * whose size or modification time changed are read again. When the fingerprint
+ * changes the whole cache is dropped. Entries expire after {@code ttl-ms}, and
+ * the least recently used ones are evicted beyond {@code max-entries} or
+ * {@code max-bytes} (estimated). Only results the playbook itself produced are
+ * stored: {@code successful} runs, and {@code failed} runs that emitted events
+ * and reached every host. Timeouts, cancellations, unreachable hosts and runs
+ * that could not be started or read ({@code error}) always run again, since
+ * they say nothing about the configuration being checked.
+ */
+@Slf4j
+@Component
+public class RunResultCache {
+
+    private final boolean enabled;
+    private final long ttlMs;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long checkIntervalMs;
+    private final Path projectPath;
+    private final Path runsPath;
+    private final RunTaskMetrics metrics;
+
+    private final LinkedHashMap<String, Hit> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    /** Per-file content digests, reused while size and modification time are unchanged. */
+    private final Map<Path, FileDigest> fileDigests = new HashMap<>();
+    private volatile String fingerprint;
+    private ScheduledExecutorService fingerprinter;
+
+    public RunResultCache(
+            RunWorkspaceManager workspaceManager,
+            RunTaskMetrics metrics,
+            @Value("${runtask.result-cache.enabled:false}") boolean enabled,
+            @Value("${runtask.result-cache.ttl-ms:3600000}") long ttlMs,
+            @Value("${runtask.result-cache.max-entries:1000}") int maxEntries,
+            @Value("${runtask.result-cache.max-bytes:8388608}") long maxBytes,
+            @Value("${runtask.result-cache.check-interval-ms:2000}") long checkIntervalMs) {
+        this.projectPath = workspaceManager.getProjectPath();
+        this.runsPath = workspaceManager.getRunsPath();
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.checkIntervalMs = checkIntervalMs;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        refreshFingerprint();
+        metrics.gauge("runtask.result-cache.entries", "Cached run results", this::size);
+        fingerprinter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "result-cache-fingerprint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fingerprinter.scheduleWithFixedDelay(this::refreshFingerprint, checkIntervalMs, checkIntervalMs,
+                TimeUnit.MILLISECONDS);
+        log.info("Run result cache enabled (ttl: {}ms, max entries: {}, max bytes: {})", ttlMs, maxEntries, maxBytes);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (fingerprinter != null) {
+            fingerprinter.shutdownNow();
+        }
+    }
+
+    /**
+     * Cache key for running {@code webhook} through {@code route} against the
+     * current project content, or {@code null} if the result must not be cached.
+     */
+    public String keyFor(TerraformWebhook webhook, PlaybookRoute route) {
+        String content = fingerprint;
+        if (!enabled || !route.isCacheable() || content == null || webhook.getConfigurationVersionId() == null) {
+            return null;
+        }
+        MessageDigest digest = sha256();
+        for (String part : new String[] {
+                webhook.getOrganizationName(), webhook.getWorkspaceId(), webhook.getWorkspaceName(),
+                webhook.getStage(), webhook.getConfigurationVersionId(),
+                route.getPlaybook(), route.getInventory(), route.getExtraVarsJson(), content}) {
+            digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public synchronized Optional<Hit> get(String key) {
+        Hit hit = entries.get(key);
+        if (hit != null && System.currentTimeMillis() - hit.cachedAt > ttlMs) {
+            remove(key);
+            hit = null;
+        }
+        metrics.resultCacheLookup(hit != null);
+        return Optional.ofNullable(hit);
+    }
+
+    public synchronized void put(String key, TerraformWebhook webhook, String outputUrl, PlaybookSummary summary) {
+        if (!summary.isSuccessful() && !isPlaybookFailure(summary)) {
+            return;
+        }
+        remove(key);
+        Hit hit = new Hit(webhook.getRunId(), outputUrl, summary, System.currentTimeMillis(), estimateBytes(key, summary));
+        entries.put(key, hit);
+        bytes += hit.bytes;
+        Iterator<Map.Entry<String, Hit>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * A failure of the playbook itself, as opposed to one of the environment:
+     * it ran (events were emitted) and no host was unreachable.
+     */
+    private static boolean isPlaybookFailure(PlaybookSummary summary) {
+        return "failed".equals(summary.getStatus()) && summary.getEventCount() > 0
+                && summary.getHosts().values().stream().allMatch(host -> host.getUnreachable() == 0);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void remove(String key) {
+        Hit removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.bytes;
+        }
+    }
+
+    private void refreshFingerprint() {
+        try {
+            String current = fingerprintProject();
+            String previous = fingerprint;
+            fingerprint = current;
+            if (previous != null && !previous.equals(current)) {
+                int dropped;
+                synchronized (this) {
+                    dropped = entries.size();
+                    entries.clear();
+                    bytes = 0;
+                }
+                log.info("Project content changed, dropped {} cached run result(s)", dropped);
+            }
+        } catch (Exception e) {
+            // Without a current fingerprint nothing is served from or stored in the cache
+            fingerprint = null;
+            log.warn("Could not fingerprint {}, result cache suspended: {}", projectPath, e.getMessage());
+        }
+    }
+
+    private String fingerprintProject() throws IOException {
+        Map<Path, FileDigest> seen = new TreeMap<>();
+        Files.walkFileTree(projectPath, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                String name = dir.getFileName() != null ? dir.getFileName().toString() : "";
+                return dir.equals(runsPath) || name.equals("artifacts") || name.startsWith(".")
+                        ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile()) {
+                    FileDigest known = fileDigests.get(file);
+                    if (known == null || known.size != attrs.size()
+                            || known.modified != attrs.lastModifiedTime().toMillis()) {
+                        known = new FileDigest(attrs.size(), attrs.lastModifiedTime().toMillis(), digestFile(file));
+                    }
+                    seen.put(projectPath.relativize(file), known);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        fileDigests.clear();
+        MessageDigest digest = sha256();
+        seen.forEach((path, file) -> {
+            fileDigests.put(projectPath.resolve(path), file);
+            digest.update(path.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(file.digest);
+        });
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static byte[] digestFile(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static long estimateBytes(String key, PlaybookSummary summary) {
+        return 256 + 2L * key.length() + 2L * summary.describe().length()
+                + 128L * (summary.getHosts().size() + summary.getSlowestTasks().size());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record FileDigest(long size, long modified, byte[] digest) {
+    }
+
+    /**
+     * A stored result and the run that produced it.
+     */
+    @Getter
+    public static final class Hit {
+        private final String runId;
+        private final String outputUrl;
+        private final PlaybookSummary summary;
+        private final long cachedAt;
+        private final long bytes;
+
+        private Hit(String runId, String outputUrl, PlaybookSummary summary, long cachedAt, long bytes) {
+            this.runId = runId;
+            this.outputUrl = outputUrl;
+            this.summary = summary;
+            this.cachedAt = cachedAt;
+            this.bytes = bytes;
+        }
+    }
+}
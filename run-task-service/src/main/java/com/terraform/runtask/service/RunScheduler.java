@@ -0,0 +1,271 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.model.RunQueueEntry;
+import com.terraform.runtask.model.TerraformWebhook;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which claimed run a free worker executes next.
+ * <p>
+ * Pending runs are kept per organization and served round-robin, so one busy
+ * organization cannot starve the others. Mandatory runs are considered before
+ * advisory ones across all organizations. A run is only started while its
+ * organization, workspace and inventory are under their concurrency limits
+ * ({@code 0} means unlimited). With {@code max-per-inventory=1}, runs that
+ * target the same inventory never overlap. A blocked run does not hold up later
+ * runs that are free to start.
+ * <p>
+ * Limits apply per node.
+ */
+@Component
+public class RunScheduler {
+
+    private final int workers;
+    private final int maxPerOrganization;
+    private final int maxPerWorkspace;
+    private final int maxPerInventory;
+    private final Map<String, Integer> organizationLimits;
+    private final Map<String, Integer> workspaceLimits;
+
+    /** Pending runs per organization; iteration order is the round-robin order. */
+    private final LinkedHashMap<String, TreeSet<Pending>> pendingByOrganization = new LinkedHashMap<>();
+    private final Map<RunJob, Pending> running = new IdentityHashMap<>();
+    private final Map<String, Integer> runningByOrganization = new HashMap<>();
+    private final Map<String, Integer> runningByWorkspace = new HashMap<>();
+    private final Map<String, Integer> runningByInventory = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private int pending;
+
+    public RunScheduler(
+            @Value("${runtask.queue.workers:4}") int workers,
+            @Value("${runtask.scheduler.max-per-organization:0}") int maxPerOrganization,
+            @Value("${runtask.scheduler.max-per-workspace:0}") int maxPerWorkspace,
+            @Value("${runtask.scheduler.max-per-inventory:0}") int maxPerInventory,
+            @Value("${runtask.scheduler.organization-limits:}") String organizationLimits,
+            @Value("${runtask.scheduler.workspace-limits:}") String workspaceLimits) {
+        this.workers = workers;
+        this.maxPerOrganization = maxPerOrganization;
+        this.maxPerWorkspace = maxPerWorkspace;
+        this.maxPerInventory = maxPerInventory;
+        this.organizationLimits = parseLimits(organizationLimits);
+        this.workspaceLimits = parseLimits(workspaceLimits);
+    }
+
+    public synchronized void add(RunJob job) {
+        TerraformWebhook webhook = job.getWebhook();
+        Pending run = new Pending(job, organization(webhook), workspace(webhook),
+                job.getRoute().getInventory(), priorityOf(webhook), sequence.incrementAndGet());
+        pendingByOrganization.computeIfAbsent(run.organization, o -> new TreeSet<>(Pending.ORDER)).add(run);
+        pending++;
+        notifyAll();
+    }
+
+    /**
+     * Blocks until a pending run may start, and counts it as running.
+     */
+    public synchronized RunJob next() throws InterruptedException {
+        while (true) {
+            Pending run = select();
+            if (run != null) {
+                admit(run);
+                notifyAll();
+                return run.job;
+            }
+            wait();
+        }
+    }
+
+    public synchronized void release(RunJob job) {
+        Pending run = running.remove(job);
+        if (run != null) {
+            decrement(runningByOrganization, run.organization);
+            decrement(runningByWorkspace, run.workspace);
+            decrement(runningByInventory, run.inventory);
+            notifyAll();
+        }
+    }
+
+    public synchronized int pending() {
+        return pending;
+    }
+
+    /**
+     * Blocks while {@code window} runs are already pending, so a node does not
+     * claim more of a shared queue than it can schedule fairly.
+     */
+    public synchronized void awaitRoom(int window) throws InterruptedException {
+        while (pending >= window) {
+            wait();
+        }
+    }
+
+    /**
+     * Webhooks of {@code runId} claimed by this node and not yet released,
+     * whether pending or handed to a worker.
+     */
+    public synchronized List<TerraformWebhook> claimedRuns(String runId) {
+        List<TerraformWebhook> webhooks = new ArrayList<>();
+        running.keySet().forEach(job -> webhooks.add(job.getWebhook()));
+        pendingByOrganization.values().forEach(runs -> runs.forEach(run -> webhooks.add(run.job.getWebhook())));
+        webhooks.removeIf(webhook -> !runId.equals(webhook.getRunId()));
+        return webhooks;
+    }
+
+    /**
+     * Removes and returns every run that has not started, e.g. at shutdown.
+     */
+    public synchronized List<RunJob> drainPending() {
+        List<RunJob> jobs = new ArrayList<>();
+        pendingByOrganization.values().forEach(runs -> runs.forEach(run -> jobs.add(run.job)));
+        pendingByOrganization.clear();
+        pending = 0;
+        return jobs;
+    }
+
+    /**
+     * Running runs first, then pending runs in the order they would be
+     * considered, each with the reason it has not started.
+     */
+    public synchronized List<RunQueueEntry> snapshot() {
+        long now = System.currentTimeMillis();
+        List<RunQueueEntry> entries = new ArrayList<>();
+        running.values().forEach(run -> entries.add(entry(run, "running", now)));
+        boolean workerFree = running.size() < workers;
+        for (TreeSet<Pending> runs : pendingByOrganization.values()) {
+            for (Pending run : runs) {
+                String blocker = blocker(run);
+                entries.add(entry(run, blocker != null ? blocker : workerFree ? "fair_share" : "worker", now));
+            }
+        }
+        return entries;
+    }
+
+    private Pending select() {
+        for (int priority = 0; priority <= 1; priority++) {
+            for (Map.Entry<String, TreeSet<Pending>> organization : pendingByOrganization.entrySet()) {
+                for (Iterator<Pending> it = organization.getValue().iterator(); it.hasNext(); ) {
+                    Pending run = it.next();
+                    if (run.priority == priority && blocker(run) == null) {
+                        it.remove();
+                        pending--;
+                        // Served: this organization goes to the back of the round-robin order
+                        TreeSet<Pending> runs = pendingByOrganization.remove(organization.getKey());
+                        if (!runs.isEmpty()) {
+                            pendingByOrganization.put(organization.getKey(), runs);
+                        }
+                        return run;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private void admit(Pending run) {
+        running.put(run.job, run);
+        runningByOrganization.merge(run.organization, 1, Integer::sum);
+        runningByWorkspace.merge(run.workspace, 1, Integer::sum);
+        runningByInventory.merge(run.inventory, 1, Integer::sum);
+    }
+
+    private String blocker(Pending run) {
+        if (atLimit(runningByOrganization, run.organization, organizationLimits.getOrDefault(run.organization, maxPerOrganization))) {
+            return "organization_limit";
+        }
+        if (atLimit(runningByWorkspace, run.workspace, workspaceLimits.getOrDefault(run.workspace, maxPerWorkspace))) {
+            return "workspace_limit";
+        }
+        if (atLimit(runningByInventory, run.inventory, maxPerInventory)) {
+            return "inventory_busy";
+        }
+        return null;
+    }
+
+    private static boolean atLimit(Map<String, Integer> counts, String key, int limit) {
+        return limit > 0 && counts.getOrDefault(key, 0) >= limit;
+    }
+
+    private static void decrement(Map<String, Integer> counts, String key) {
+        counts.computeIfPresent(key, (k, n) -> n > 1 ? n - 1 : null);
+    }
+
+    private static RunQueueEntry entry(Pending run, String waitingOn, long now) {
+        TerraformWebhook webhook = run.job.getWebhook();
+        return RunQueueEntry.builder()
+                .runId(webhook.getRunId())
+                .taskResultId(webhook.getTaskResultId())
+                .organizationName(webhook.getOrganizationName())
+                .workspaceId(run.workspace)
+                .inventory(run.inventory)
+                .enforcementLevel(webhook.getTaskResultEnforcementLevel())
+                .waitingOn(waitingOn)
+                .waitedMs(now - run.job.getEnqueuedAt())
+                .build();
+    }
+
+    /**
+     * Mandatory tasks block the TFE run, so they go ahead of advisory ones.
+     */
+    static int priorityOf(TerraformWebhook webhook) {
+        return "mandatory".equalsIgnoreCase(webhook.getTaskResultEnforcementLevel()) ? 0 : 1;
+    }
+
+    private static String organization(TerraformWebhook webhook) {
+        return String.valueOf(webhook.getOrganizationName());
+    }
+
+    private static String workspace(TerraformWebhook webhook) {
+        return String.valueOf(webhook.getWorkspaceId() != null ? webhook.getWorkspaceId() : webhook.getWorkspaceName());
+    }
+
+    /**
+     * Parses {@code name:limit} pairs separated by commas.
+     */
+    private static Map<String, Integer> parseLimits(String value) {
+        Map<String, Integer> limits = new HashMap<>();
+        for (String pair : value.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            int colon = pair.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Invalid concurrency limit '" + pair.trim() + "', expected name:limit");
+            }
+            limits.put(pair.substring(0, colon).trim(), Integer.parseInt(pair.substring(colon + 1).trim()));
+        }
+        return Map.copyOf(limits);
+    }
+
+    private static final class Pending {
+        private static final Comparator<Pending> ORDER =
+                Comparator.<Pending>comparingInt(p -> p.priority).thenComparingLong(p -> p.sequence);
+
+        private final RunJob job;
+        private final String organization;
+        private final String workspace;
+        private final String inventory;
+        private final int priority;
+        private final long sequence;
+
+        private Pending(RunJob job, String organization, String workspace, String inventory, int priority, long sequence) {
+            this.job = job;
+            this.organization = organization;
+            this.workspace = workspace;
+            this.inventory = inventory;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+}
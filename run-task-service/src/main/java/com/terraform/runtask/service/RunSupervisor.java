@@ -0,0 +1,350 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.model.TerraformWebhook;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Watches every ansible-runner execution for its wall-clock timeout and for
+ * cancellation requests.
+ * <p>
+ * The timeout is {@code runtask.supervisor.timeout-ms}, overridden per stage
+ * with {@code stage-timeouts} ({@code stage:ms,...}). It counts from the moment
+ * the run gets one of the {@code ansible.runner.max-processes} runner slots, so
+ * time spent waiting for a slot is not charged to the run. A timed-out or canceled execution is terminated as a
+ * process tree: every process gets {@code SIGTERM}, so ansible-runner can stop
+ * {@code ansible-playbook} and write its artifacts. Whatever is still alive
+ * after {@code kill-grace-ms} is killed. The run then finishes with the
+ * ansible-runner status {@code timeout} or {@code canceled} and is reported to
+ * TFE as failed.
+ * <p>
+ * Forked runs can also be started under CPU and memory caps
+ * ({@code runtask.supervisor.limits.mode}): {@code prlimit} sets per-process
+ * rlimits, {@code systemd} starts each run in its own transient cgroup scope.
+ */
+@Slf4j
+@Component
+public class RunSupervisor {
+
+    public static final String TIMEOUT = "timeout";
+    public static final String CANCELED = "canceled";
+
+    private final long defaultTimeoutMs;
+    private final Map<String, Long> stageTimeouts;
+    private final long killGraceMs;
+    private final long cancelTtlMs;
+    private final List<String> limitPrefix;
+    private final List<String> workerLimitPrefix;
+    private final boolean cpuSecondsCapped;
+
+    private final Set<Execution> active = ConcurrentHashMap.newKeySet();
+    /** Cancellations for runs queued on this node, by run ID and stage, with their expiry. */
+    private final Map<String, Long> pendingCancels = new ConcurrentHashMap<>();
+    private ScheduledExecutorService watchdog;
+    private ExecutorService terminators;
+
+    public RunSupervisor(
+            @Value("${runtask.supervisor.timeout-ms:3600000}") long defaultTimeoutMs,
+            @Value("${runtask.supervisor.stage-timeouts:}") String stageTimeouts,
+            @Value("${runtask.supervisor.kill-grace-ms:10000}") long killGraceMs,
+            @Value("${runtask.supervisor.cancel-ttl-ms:3600000}") long cancelTtlMs,
+            @Value("${runtask.supervisor.limits.mode:none}") String limitMode,
+            @Value("${runtask.supervisor.limits.memory-mb:0}") long memoryMb,
+            @Value("${runtask.supervisor.limits.cpu-seconds:0}") long cpuSeconds,
+            @Value("${runtask.supervisor.limits.cpu-percent:0}") int cpuPercent) {
+        this.defaultTimeoutMs = defaultTimeoutMs;
+        this.stageTimeouts = parseTimeouts(stageTimeouts);
+        this.killGraceMs = killGraceMs;
+        this.cancelTtlMs = cancelTtlMs;
+        this.limitPrefix = limitPrefix(limitMode.trim().toLowerCase(), memoryMb, cpuSeconds, cpuPercent);
+        // RLIMIT_CPU counts a process's whole life, so a worker serving many runs would exhaust it
+        this.workerLimitPrefix = limitPrefix(limitMode.trim().toLowerCase(), memoryMb, 0, cpuPercent);
+        this.cpuSecondsCapped = !limitPrefix.equals(workerLimitPrefix);
+    }
+
+    @PostConstruct
+    void start() {
+        watchdog = Executors.newSingleThreadScheduledExecutor(daemon("run-watchdog"));
+        watchdog.scheduleWithFixedDelay(this::enforceDeadlines, 1, 1, TimeUnit.SECONDS);
+        terminators = Executors.newCachedThreadPool(daemon("run-terminator"));
+        log.info("Run supervisor started (timeout: {}ms, stage timeouts: {}, kill grace: {}ms, limits: {})",
+                defaultTimeoutMs, stageTimeouts, killGraceMs, limitPrefix.isEmpty() ? "none" : limitPrefix);
+    }
+
+    @PreDestroy
+    void stop() {
+        watchdog.shutdownNow();
+        terminators.shutdownNow();
+    }
+
+    /**
+     * Starts supervising an execution of {@code webhook}. A cancellation that
+     * was armed while the run was queued takes effect immediately.
+     */
+    public Execution begin(TerraformWebhook webhook) {
+        String stage = String.valueOf(webhook.getStage());
+        long timeoutMs = stageTimeouts.getOrDefault(stage, defaultTimeoutMs);
+        Execution execution = new Execution(webhook.getRunId(), stage, timeoutMs);
+        active.add(execution);
+        Long cancelUntil = pendingCancels.remove(cancelKey(webhook.getRunId(), stage));
+        if (cancelUntil != null && cancelUntil > System.currentTimeMillis()) {
+            execution.kill(CANCELED);
+        }
+        return execution;
+    }
+
+    public void end(Execution execution) {
+        active.remove(execution);
+    }
+
+    /**
+     * Cancels the executions of {@code runId} on this node, of every stage
+     * when {@code stage} is {@code null}.
+     *
+     * @return the number of executions being terminated by this call
+     */
+    public int cancel(String runId, String stage) {
+        int canceled = 0;
+        for (Execution execution : active) {
+            if (execution.matches(runId, stage) && execution.kill(CANCELED)) {
+                canceled++;
+            }
+        }
+        return canceled;
+    }
+
+    /**
+     * Whether an execution of {@code runId} ({@code stage}, or any stage when
+     * {@code null}) on this node is already being terminated.
+     */
+    public boolean isTerminating(String runId, String stage) {
+        for (Execution execution : active) {
+            if (execution.matches(runId, stage) && execution.reason != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Arms a cancellation for a run queued on this node: it is canceled as soon
+     * as it starts, provided that happens within {@code cancel-ttl-ms}. The
+     * caller disarms it with {@link #disarm} once the queued run is executed or
+     * dropped.
+     */
+    public void cancelWhenStarted(String runId, String stage) {
+        long now = System.currentTimeMillis();
+        pendingCancels.values().removeIf(until -> until < now);
+        pendingCancels.put(cancelKey(runId, stage), now + cancelTtlMs);
+    }
+
+    public void disarm(String runId, String stage) {
+        pendingCancels.remove(cancelKey(runId, stage));
+    }
+
+    /**
+     * Command prefix that applies the configured resource caps, empty when none.
+     */
+    public List<String> limitPrefix() {
+        return limitPrefix;
+    }
+
+    /**
+     * Command prefix for a warm runner worker, which executes one run at a
+     * time: the caps of {@link #limitPrefix()} without {@code cpu-seconds}.
+     */
+    public List<String> workerLimitPrefix() {
+        return workerLimitPrefix;
+    }
+
+    /**
+     * Whether {@code cpu-seconds} is configured, a cap warm workers cannot apply.
+     */
+    public boolean isCpuSecondsCapped() {
+        return cpuSecondsCapped;
+    }
+
+    private void enforceDeadlines() {
+        long now = System.nanoTime();
+        for (Execution execution : active) {
+            if (execution.started && now - execution.deadline > 0 && execution.kill(TIMEOUT)) {
+                log.warn("Run {} ({}) exceeded its {}ms timeout", execution.runId, execution.stage, execution.timeoutMs);
+            }
+        }
+    }
+
+    private void terminate(Execution execution, Process process) {
+        terminators.execute(() -> {
+            ProcessHandle root = process.toHandle();
+            List<ProcessHandle> tree = new ArrayList<>(root.descendants().toList());
+            tree.add(0, root);
+            log.warn("Terminating run {} ({}, {}): {} process(es)", execution.runId, execution.stage,
+                    execution.reason, tree.size());
+            tree.forEach(ProcessHandle::destroy);
+            try {
+                if (process.waitFor(killGraceMs, TimeUnit.MILLISECONDS)) {
+                    // ansible-runner is gone; take down anything it left behind
+                    killAll(tree);
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<ProcessHandle> remaining = new ArrayList<>(tree);
+            remaining.addAll(root.descendants().toList());
+            log.warn("Run {} did not stop within {}ms, killing it", execution.runId, killGraceMs);
+            killAll(remaining);
+        });
+    }
+
+    private static String cancelKey(String runId, String stage) {
+        return runId + "/" + stage;
+    }
+
+    private static void killAll(List<ProcessHandle> processes) {
+        processes.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+    }
+
+    private static List<String> limitPrefix(String mode, long memoryMb, long cpuSeconds, int cpuPercent) {
+        List<String> prefix = new ArrayList<>();
+        switch (mode) {
+            case "none" -> {
+            }
+            case "prlimit" -> {
+                prefix.add("prlimit");
+                if (memoryMb > 0) {
+                    prefix.add("--as=" + memoryMb * 1024 * 1024);
+                }
+                if (cpuSeconds > 0) {
+                    prefix.add("--cpu=" + cpuSeconds);
+                }
+            }
+            case "systemd" -> {
+                prefix.addAll(List.of("systemd-run", "--scope", "--quiet", "--collect"));
+                if (!"root".equals(System.getProperty("user.name"))) {
+                    prefix.add("--user");
+                }
+                if (memoryMb > 0) {
+                    prefix.add("--property=MemoryMax=" + memoryMb + "M");
+                }
+                if (cpuPercent > 0) {
+                    prefix.add("--property=CPUQuota=" + cpuPercent + "%");
+                }
+            }
+            default -> throw new IllegalArgumentException(
+                    "Unknown runtask.supervisor.limits.mode '" + mode + "', expected none, prlimit or systemd");
+        }
+        return List.copyOf(prefix);
+    }
+
+    private static Map<String, Long> parseTimeouts(String value) {
+        Map<String, Long> timeouts = new HashMap<>();
+        for (String pair : value.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            int colon = pair.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Invalid stage timeout '" + pair.trim() + "', expected stage:ms");
+            }
+            timeouts.put(pair.substring(0, colon).trim(), Long.parseLong(pair.substring(colon + 1).trim()));
+        }
+        return Map.copyOf(timeouts);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * One supervised execution. Its deadline runs from {@link #start()}. The
+     * process is attached once it is launched; a kill requested before that
+     * terminates it as soon as it is attached.
+     */
+    public final class Execution {
+        private final String runId;
+        private final String stage;
+        private final long timeoutMs;
+        private volatile boolean started;
+        private volatile long deadline;
+        private Process process;
+        private volatile String reason;
+
+        private Execution(String runId, String stage, long timeoutMs) {
+            this.runId = runId;
+            this.stage = stage;
+            this.timeoutMs = timeoutMs;
+        }
+
+        /**
+         * Starts the timeout clock, once the execution holds a runner slot.
+         */
+        public void start() {
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            started = true;
+        }
+
+        public synchronized void attach(Process process) {
+            this.process = process;
+            if (reason != null) {
+                terminate(this, process);
+            }
+        }
+
+        /**
+         * Detaches the process once the run is done with it, e.g. before a warm
+         * worker goes back to the pool.
+         */
+        public synchronized void detach() {
+            this.process = null;
+        }
+
+        /**
+         * {@link #TIMEOUT} or {@link #CANCELED} once the execution was killed,
+         * otherwise {@code null}.
+         */
+        public String getKilledReason() {
+            return reason;
+        }
+
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        private boolean matches(String runId, String stage) {
+            return runId.equals(this.runId) && (stage == null || stage.equals(this.stage));
+        }
+
+        private synchronized boolean kill(String why) {
+            if (reason != null) {
+                return false;
+            }
+            reason = why;
+            if (process != null) {
+                terminate(this, process);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.model.TerraformWebhook;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters for the run-task pipeline, scraped through
+ * {@code /actuator/prometheus}. Meter names and tags live here so the services
+ * only report what happened.
+ * <p>
+ * Playbook durations are tagged by organization and workspace unless
+ * {@code runtask.metrics.workspace-tags=false}, for installations with enough
+ * workspaces that the label cardinality matters.
+ */
+@Component
+public class RunTaskMetrics {
+
+    private final MeterRegistry registry;
+    private final boolean workspaceTags;
+    private final Counter queueRejected;
+    private final Counter queueCoalesced;
+    private final Counter callbackRetries;
+
+    public RunTaskMetrics(MeterRegistry registry,
+                          @Value("${runtask.metrics.workspace-tags:true}") boolean workspaceTags) {
+        this.registry = registry;
+        this.workspaceTags = workspaceTags;
+        this.queueRejected = Counter.builder("runtask.queue.rejected")
+                .description("Webhooks rejected because the run queue was full")
+                .register(registry);
+        this.queueCoalesced = Counter.builder("runtask.queue.coalesced")
+                .description("Webhooks folded into an already queued run")
+                .register(registry);
+        this.callbackRetries = Counter.builder("runtask.callback.retries")
+                .description("Callback attempts that failed and were rescheduled")
+                .register(registry);
+    }
+
+    public void gauge(String name, String description, Supplier<Number> value) {
+        Gauge.builder(name, value).description(description).register(registry);
+    }
+
+    public void queueRejected() {
+        queueRejected.increment();
+    }
+
+    public void queueCoalesced() {
+        queueCoalesced.increment();
+    }
+
+    public void routeShortCircuit(TerraformWebhook webhook) {
+        Counter.builder("runtask.routing.short-circuit")
+                .description("Runs reported as passed by a no-op route without starting ansible-runner")
+                .tag("stage", String.valueOf(webhook.getStage()))
+                .register(registry)
+                .increment();
+    }
+
+    public void resultCacheLookup(boolean hit) {
+        Counter.builder("runtask.result-cache.lookups")
+                .description("Result cache lookups for cacheable routes")
+                .tag("result", hit ? "hit" : "miss")
+                .register(registry)
+                .increment();
+    }
+
+    public void admissionRejected(String reason) {
+        Counter.builder("runtask.admission.rejected")
+                .description("Webhooks rejected by the admission filter before parsing")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    public void progressUpdate(String outcome) {
+        Counter.builder("runtask.callback.progress")
+                .description("Intermediate running updates: delivered, failed, or superseded by the final result")
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    public void queueWait(TerraformWebhook webhook, long millis) {
+        Timer.builder("runtask.queue.wait")
+                .description("Time a run spent queued before a worker picked it up")
+                .tag("enforcement", enforcement(webhook))
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofHours(1))
+                .register(registry)
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Time from launching ansible-runner (fork or warm worker) until its first
+     * job event, i.e. interpreter and runner startup.
+     */
+    public void runnerSpawn(String mode, long nanos) {
+        Timer.builder("ansible.runner.spawn")
+                .description("Time from launching ansible-runner until its first event")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(1))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void playbookDuration(TerraformWebhook webhook, String result, long millis) {
+        Tags tags = Tags.of("stage", String.valueOf(webhook.getStage()), "result", String.valueOf(result));
+        if (workspaceTags) {
+            tags = tags.and("organization", String.valueOf(webhook.getOrganizationName()),
+                    "workspace", String.valueOf(webhook.getWorkspaceName()));
+        }
+        Timer.builder("runtask.playbook.duration")
+                .description("Playbook execution time, including runner startup")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(100))
+                .maximumExpectedValue(Duration.ofHours(2))
+                .register(registry)
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * One PATCH to TFE. {@code outcome} is {@code 2xx}/{@code 4xx}/{@code 5xx}
+     * or {@code error} for connection failures and timeouts.
+     */
+    public void callbackAttempt(String outcome, long nanos) {
+        Timer.builder("runtask.callback.attempt")
+                .description("Latency of a single callback PATCH to TFE")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(1))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void callbackRetry() {
+        callbackRetries.increment();
+    }
+
+    /**
+     * End-to-end delivery of one callback, retries included. {@code result} is
+     * {@code delivered} or {@code failed}.
+     */
+    public void callbackDelivery(String result, long nanos) {
+        Timer.builder("runtask.callback.delivery")
+                .description("Time from queuing a callback until it was acknowledged or given up")
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String enforcement(TerraformWebhook webhook) {
+        return "mandatory".equalsIgnoreCase(webhook.getTaskResultEnforcementLevel()) ? "mandatory" : "advisory";
+    }
+}
@@ -0,0 +1,43 @@
+package com.terraform.runtask.service;
+
+import lombok.Getter;
+
+import java.nio.file.Path;
+
+/**
+ * Isolated ansible-runner private data directory for a single run.
+ * Artifacts are written under {@code artifacts/<ident>} so concurrent runs never
+ * share a status or stdout file.
+ */
+@Getter
+public class RunWorkspace {
+
+    private final String ident;
+    private final Path privateDataDir;
+
+    public RunWorkspace(String ident, Path privateDataDir) {
+        this.ident = ident;
+        this.privateDataDir = privateDataDir;
+    }
+
+    public Path getArtifactDir() {
+        return privateDataDir.resolve("artifacts").resolve(ident);
+    }
+
+    public Path getStatusFile() {
+        return getArtifactDir().resolve("status");
+    }
+
+    /**
+     * Plain-text playbook output, rendered from the job events once the run
+     * has finished. ansible-runner's own {@code stdout} artifact holds JSON
+     * event lines, since runs are started with {@code --json}.
+     */
+    public Path getOutputFile() {
+        return privateDataDir.resolve("output.txt");
+    }
+
+    public Path getJobEventsDir() {
+        return getArtifactDir().resolve("job_events");
+    }
+}
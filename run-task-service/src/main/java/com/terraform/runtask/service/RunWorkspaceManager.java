@@ -0,0 +1,189 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.model.TerraformWebhook;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Creates a private data directory per run. The shared project content
+ * ({@code project/}, {@code inventory/}, {@code env/}, ...) is symlinked in
+ * rather than copied, so preparing a run costs a handful of inodes.
+ */
+@Slf4j
+@Component
+public class RunWorkspaceManager {
+
+    /** Entries of the shared project directory that are per-run and must never be linked. */
+    private static final Set<String> EXCLUDED_ENTRIES = Set.of("artifacts");
+
+    private final Path projectPath;
+    private final Path runsPath;
+    private final Set<String> active = ConcurrentHashMap.newKeySet();
+    private final Map<String, RunWorkspace> activeByRun = new ConcurrentHashMap<>();
+
+    public RunWorkspaceManager(
+            @Value("${ansible.runner.project.path}") String projectPath,
+            @Value("${ansible.runner.runs.path:}") String runsPath) {
+        this.projectPath = Paths.get(projectPath).toAbsolutePath().normalize();
+        this.runsPath = runsPath.isEmpty()
+                ? this.projectPath.resolve("runs")
+                : Paths.get(runsPath).toAbsolutePath().normalize();
+    }
+
+    public RunWorkspace prepare(TerraformWebhook webhook) throws IOException {
+        Files.createDirectories(runsPath);
+
+        String baseIdent = sanitize(webhook.getRunId() + "-" + webhook.getStage());
+        Path privateDataDir = runsPath.resolve(baseIdent);
+        String ident = baseIdent;
+        // Same run and stage delivered twice must still get separate directories
+        for (int attempt = 2; ; attempt++) {
+            try {
+                Files.createDirectory(privateDataDir);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                ident = baseIdent + "-" + attempt;
+                privateDataDir = runsPath.resolve(ident);
+            }
+        }
+
+        linkSharedContent(privateDataDir);
+        RunWorkspace workspace = new RunWorkspace(ident, privateDataDir);
+        active.add(ident);
+        activeByRun.put(runKey(webhook.getRunId(), webhook.getStage()), workspace);
+        log.info("Prepared private data dir for run {}: {}", webhook.getRunId(), privateDataDir);
+        return workspace;
+    }
+
+    /**
+     * Marks the run as no longer executing; its artifacts are final.
+     */
+    public void complete(RunWorkspace workspace) {
+        active.remove(workspace.getIdent());
+        activeByRun.values().remove(workspace);
+    }
+
+    /**
+     * Whether ansible-runner may still be writing to the workspace. Workspaces
+     * left behind by a previous process are never active.
+     */
+    public boolean isActive(RunWorkspace workspace) {
+        return active.contains(workspace.getIdent());
+    }
+
+    /**
+     * The workspace of a run this process is executing right now, optionally
+     * for one stage only.
+     */
+    public Optional<RunWorkspace> findActive(String runId, String stage) {
+        if (stage != null) {
+            return Optional.ofNullable(activeByRun.get(runKey(runId, stage)));
+        }
+        String prefix = runId + "/";
+        return activeByRun.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(prefix))
+                .map(Map.Entry::getValue)
+                .findFirst();
+    }
+
+    /**
+     * Opens the run directory named {@code ident}, as recorded in the run
+     * history. Names that could leave the runs directory are refused.
+     */
+    public Optional<RunWorkspace> open(String ident) {
+        if (!isValidIdent(ident)) {
+            return Optional.empty();
+        }
+        Path dir = runsPath.resolve(ident);
+        return Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)
+                ? Optional.of(new RunWorkspace(ident, dir))
+                : Optional.empty();
+    }
+
+    /**
+     * Deletes the run directory named {@code ident} unless it is still
+     * executing. Links to the shared project content are removed, never
+     * followed.
+     *
+     * @return whether a directory was deleted
+     */
+    public boolean delete(String ident) {
+        if (!isValidIdent(ident) || active.contains(ident)) {
+            return false;
+        }
+        Path dir = runsPath.resolve(ident);
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                    if (e != null) {
+                        throw e;
+                    }
+                    Files.delete(directory);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not delete run directory {}: {}", dir, e.toString());
+            return false;
+        }
+    }
+
+    public Path getProjectPath() {
+        return projectPath;
+    }
+
+    public Path getRunsPath() {
+        return runsPath;
+    }
+
+    private void linkSharedContent(Path privateDataDir) throws IOException {
+        try (Stream<Path> entries = Files.list(projectPath)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                String name = entry.getFileName().toString();
+                if (EXCLUDED_ENTRIES.contains(name) || entry.equals(runsPath)) {
+                    continue;
+                }
+                Files.createSymbolicLink(privateDataDir.resolve(name), entry);
+            }
+        }
+    }
+
+    private static boolean isValidIdent(String ident) {
+        return ident != null && !ident.isEmpty() && !ident.startsWith(".") && ident.equals(sanitize(ident));
+    }
+
+    private static String runKey(String runId, String stage) {
+        return runId + "/" + stage;
+    }
+
+    private static String sanitize(String value) {
+        return value.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
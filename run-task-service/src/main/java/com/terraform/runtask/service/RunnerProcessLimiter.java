@@ -0,0 +1,49 @@
+package com.terraform.runtask.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of ansible-runner executions (forked or warm) in progress on
+ * this node, independent of how many queue workers are waiting to start one.
+ * With virtual-thread workers thousands of runs can wait here cheaply while the
+ * real process count stays at {@code ansible.runner.max-processes}.
+ */
+@Slf4j
+@Component
+public class RunnerProcessLimiter {
+
+    private final Semaphore permits;
+    private final int maxProcesses;
+
+    public RunnerProcessLimiter(@Value("${ansible.runner.max-processes:4}") int maxProcesses, RunTaskMetrics metrics) {
+        this.maxProcesses = maxProcesses;
+        this.permits = new Semaphore(maxProcesses, true);
+        metrics.gauge("ansible.runner.processes.in-flight", "ansible-runner executions in progress", this::inFlight);
+        metrics.gauge("ansible.runner.processes.waiting", "Runs waiting for an ansible-runner slot", this::waiting);
+    }
+
+    public void acquire() throws InterruptedException {
+        // Untimed tryAcquire() would barge ahead of runs already waiting for a slot
+        if (!permits.tryAcquire(0, TimeUnit.SECONDS)) {
+            log.debug("All {} ansible-runner slots busy, waiting", maxProcesses);
+            permits.acquire();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int inFlight() {
+        return maxProcesses - permits.availablePermits();
+    }
+
+    public int waiting() {
+        return permits.getQueueLength();
+    }
+}
@@ -1,99 +1,281 @@
 package com.terraform.runtask.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.config.ExecutionThreads;
+import com.terraform.runtask.model.PendingCallback;
 import com.terraform.runtask.model.TerraformCallback;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.*;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends task-result PATCH callbacks to TFE over a shared, keep-alive,
+ * HTTP/2-capable {@link HttpClient}. Delivery is asynchronous: the caller gets a
+ * future and the execution worker is never blocked on TFE. Connection errors,
+ * timeouts, 429 and 5xx responses are retried with jittered exponential backoff.
+ * Pending deliveries are kept in the {@link CallbackOutbox} until acknowledged.
+ * <p>
+ * Progress updates ({@link #sendProgress}) are best effort instead: one
+ * attempt, no outbox, so a dropped update never delays or outlives the final
+ * result.
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class TerraformCallbackService {
 
-    private final RestTemplate restTemplate;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String JSON_API = "application/vnd.api+json";
+
+    private final CallbackPayloadWriter payloadWriter;
+    private final CallbackOutbox outbox;
+    private final RunTaskMetrics metrics;
+    private final HttpClient httpClient;
+    private final ExecutorService dispatchExecutor;
+    private final ScheduledExecutorService retryScheduler;
+    private final Duration readTimeout;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    public TerraformCallbackService(
+            CallbackPayloadWriter payloadWriter,
+            CallbackOutbox outbox,
+            @Value("${runtask.callback.connect-timeout-ms:5000}") long connectTimeoutMs,
+            @Value("${runtask.callback.read-timeout-ms:15000}") long readTimeoutMs,
+            @Value("${runtask.callback.max-attempts:6}") int maxAttempts,
+            @Value("${runtask.callback.initial-backoff-ms:500}") long initialBackoffMs,
+            @Value("${runtask.callback.max-backoff-ms:30000}") long maxBackoffMs,
+            @Value("${runtask.callback.dispatch-threads:4}") int dispatchThreads,
+            ExecutionThreads executionThreads,
+            RunTaskMetrics metrics) {
+        this.payloadWriter = payloadWriter;
+        this.outbox = outbox;
+        this.metrics = metrics;
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.dispatchExecutor = executionThreads.newTaskExecutor("callback-dispatch", dispatchThreads);
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(daemon("callback-retry"));
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .executor(dispatchExecutor)
+                .build();
+    }
 
-    public TerraformCallbackService() {
-        // Use Apache HttpClient to support PATCH method
-        this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory());
+    @PreDestroy
+    void stop() {
+        // Anything still pending stays in the outbox and is replayed on next start
+        retryScheduler.shutdownNow();
+        dispatchExecutor.shutdownNow();
     }
 
-    public void sendCallback(String callbackUrl, TerraformCallback callback, String accessToken) {
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayOutbox() {
+        List<PendingCallback> pending = outbox.loadPending();
+        if (!pending.isEmpty()) {
+            log.info("Replaying {} undelivered callback(s) from outbox", pending.size());
+            pending.forEach(p -> attempt(p, 1, System.nanoTime(), new CompletableFuture<>()));
+        }
+    }
+
+    /**
+     * Queues a callback for delivery.
+     *
+     * @return completes with {@code true} once TFE acknowledged the callback, or
+     *         {@code false} when it was rejected or retries were exhausted
+     */
+    public CompletableFuture<Boolean> sendCallback(String callbackUrl, TerraformCallback callback, String accessToken) {
+        return sendCallback(callbackUrl, callback, accessToken, CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Stores a callback in the outbox right away, but only sends it once
+     * {@code after} completes (normally or not). The callback survives a crash
+     * in between and is then replayed on the next start.
+     *
+     * @return completes with {@code true} once TFE acknowledged the callback, or
+     *         {@code false} when it was rejected or retries were exhausted
+     */
+    public CompletableFuture<Boolean> sendCallback(String callbackUrl, TerraformCallback callback, String accessToken,
+                                                   CompletionStage<?> after) {
         if (callbackUrl == null || callbackUrl.isEmpty()) {
             log.warn("No callback URL provided, skipping callback");
-            return;
+            return CompletableFuture.completedFuture(false);
         }
 
+        byte[] payload;
         try {
+            payload = payloadWriter.write(callback);
+        } catch (Exception e) {
+            log.error("Failed to serialize callback for {}", callbackUrl, e);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        if (log.isInfoEnabled()) {
+            // Log exactly the bytes that go on the wire
             log.info("╔═══════════════════════════════════════════════════════════");
             log.info("║ SENDING CALLBACK TO TFE");
             log.info("╠═══════════════════════════════════════════════════════════");
             log.info("║ Callback URL: {}", callbackUrl);
-            log.info("║ Payload: {}", objectMapper.writeValueAsString(callback));
+            log.info("║ Payload (JSON:API): {}", new String(payload, StandardCharsets.UTF_8));
             log.info("╚═══════════════════════════════════════════════════════════");
+        }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType("application/vnd.api+json"));
-            headers.setAccept(java.util.List.of(MediaType.parseMediaType("application/vnd.api+json")));
-            
-            // Add authorization if token is provided
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        PendingCallback pending = outbox.store(callbackUrl, accessToken, payload);
+        long queuedAt = System.nanoTime();
+        after.whenComplete((ignored, error) -> attempt(pending, 1, queuedAt, result));
+        return result;
+    }
+
+    /**
+     * Sends an intermediate {@code running} update once, without retries or
+     * outbox persistence.
+     *
+     * @return completes with whether TFE acknowledged the update; never exceptionally
+     */
+    public CompletableFuture<Boolean> sendProgress(String callbackUrl, TerraformCallback callback, String accessToken,
+                                                   Duration timeout) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(callbackUrl))
+                    .timeout(timeout)
+                    .header("Content-Type", JSON_API)
+                    .header("Accept", JSON_API)
+                    .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(payloadWriter.write(callback)));
             if (accessToken != null && !accessToken.isEmpty()) {
-                headers.setBearerAuth(accessToken);
-                log.info("Using Bearer token for callback authentication");
+                builder.header("Authorization", "Bearer " + accessToken);
             }
+            request = builder.build();
+        } catch (Exception e) {
+            log.warn("Skipping progress update to {}: {}", callbackUrl, e.getMessage());
+            return CompletableFuture.completedFuture(false);
+        }
 
-            // Build JSON:API payload: { data: { type: "task-results", attributes: { ... } } }
-            java.util.Map<String, Object> attributes = new java.util.HashMap<>();
-            attributes.put("status", callback.getStatus());
-            attributes.put("message", callback.getMessage());
-            if (callback.getUrl() != null && !callback.getUrl().isEmpty()) {
-                attributes.put("url", callback.getUrl());
+        long startTime = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).handle((response, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            metrics.callbackAttempt(cause != null ? "error" : (response.statusCode() / 100) + "xx",
+                    System.nanoTime() - startTime);
+            boolean delivered = cause == null && response.statusCode() / 100 == 2;
+            if (delivered) {
+                log.debug("Progress update to {}: {}", callbackUrl, callback.getMessage());
+            } else {
+                log.debug("Progress update to {} dropped ({})", callbackUrl,
+                        cause != null ? cause.toString() : "HTTP " + response.statusCode());
             }
+            metrics.progressUpdate(delivered ? "delivered" : "failed");
+            return delivered;
+        });
+    }
 
-            java.util.Map<String, Object> data = new java.util.HashMap<>();
-            data.put("type", "task-results");
-            data.put("attributes", attributes);
-
-            java.util.Map<String, Object> payload = new java.util.HashMap<>();
-            payload.put("data", data);
-
-            log.info("Payload (JSON:API): {}", objectMapper.writeValueAsString(payload));
-
-            HttpEntity<java.util.Map<String, Object>> request = new HttpEntity<>(payload, headers);
+    private void attempt(PendingCallback pending, int attempt, long queuedAt, CompletableFuture<Boolean> result) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(pending.getCallbackUrl()))
+                    .timeout(readTimeout)
+                    .header("Content-Type", JSON_API)
+                    .header("Accept", JSON_API)
+                    .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(pending.getPayload()));
+            // Add authorization if token is provided
+            if (pending.getAccessToken() != null && !pending.getAccessToken().isEmpty()) {
+                builder.header("Authorization", "Bearer " + pending.getAccessToken());
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid callback URL {}: {}", pending.getCallbackUrl(), e.getMessage());
+            outbox.remove(pending);
+            metrics.callbackDelivery("failed", System.nanoTime() - queuedAt);
+            result.complete(false);
+            return;
+        }
 
-            long startTime = System.currentTimeMillis();
-            ResponseEntity<String> response = restTemplate.exchange(
-                    callbackUrl,
-                    HttpMethod.PATCH,
-                    request,
-                    String.class
-            );
-            long duration = System.currentTimeMillis() - startTime;
+        long startTime = System.nanoTime();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            long elapsed = System.nanoTime() - startTime;
+            long duration = TimeUnit.NANOSECONDS.toMillis(elapsed);
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            metrics.callbackAttempt(cause != null ? "error" : (response.statusCode() / 100) + "xx", elapsed);
 
-            log.info("╔═══════════════════════════════════════════════════════════");
-            log.info("║ CALLBACK RESPONSE FROM TFE (duration: {}ms)", duration);
-            log.info("╠═══════════════════════════════════════════════════════════");
-            log.info("║ Status Code: {}", response.getStatusCode());
-            log.info("║ Response Body: {}", response.getBody());
-            log.info("╚═══════════════════════════════════════════════════════════");
+            if (cause == null && response.statusCode() / 100 == 2) {
+                log.info("Callback to TFE successful (status: {}, attempt: {}, duration: {}ms)",
+                        response.statusCode(), attempt, duration);
+                log.debug("Callback response body: {}", response.body());
+                outbox.remove(pending);
+                metrics.callbackDelivery("delivered", System.nanoTime() - queuedAt);
+                result.complete(true);
+                return;
+            }
 
-            if (response.getStatusCode().is2xxSuccessful()) {
-                log.info("Callback to TFE successful");
-            } else {
-                log.warn("Callback returned non-2xx status: {}", response.getStatusCode());
+            boolean retryable = cause != null || response.statusCode() >= 500 || response.statusCode() == 429;
+            String reason = cause != null ? cause.toString() : "HTTP " + response.statusCode();
+            if (retryable && attempt < maxAttempts) {
+                long delay = backoff(attempt);
+                log.warn("Callback to {} failed ({}) after {}ms, retry {}/{} in {}ms",
+                        pending.getCallbackUrl(), reason, duration, attempt, maxAttempts - 1, delay);
+                metrics.callbackRetry();
+                try {
+                    retryScheduler.schedule(() -> attempt(pending, attempt + 1, queuedAt, result), delay, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // Shutting down; the outbox keeps the callback for the next start
+                    result.complete(false);
+                    return;
+                }
             }
 
-        } catch (Exception e) {
             log.error("╔═══════════════════════════════════════════════════════════");
             log.error("║   CALLBACK TO TFE FAILED");
             log.error("╠═══════════════════════════════════════════════════════════");
-            log.error("║ Callback URL: {}", callbackUrl);
-            log.error("║ Error: {}", e.getMessage());
-            log.error("╚═══════════════════════════════════════════════════════════", e);
-        }
+            log.error("║ Callback URL: {}", pending.getCallbackUrl());
+            log.error("║ Attempts: {}", attempt);
+            log.error("║ Error: {}", reason);
+            if (response != null) {
+                log.error("║ Response Body: {}", response.body());
+            }
+            log.error("╚═══════════════════════════════════════════════════════════");
+            outbox.remove(pending);
+            metrics.callbackDelivery("failed", System.nanoTime() - queuedAt);
+            result.complete(false);
+        });
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half the window fixed, half random.
+     */
+    private long backoff(int attempt) {
+        long window = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 20));
+        return window / 2 + ThreadLocalRandom.current().nextLong(window / 2 + 1);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
-}
\ No newline at end of file
+}
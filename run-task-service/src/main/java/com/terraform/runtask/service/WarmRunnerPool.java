@@ -0,0 +1,308 @@
+package com.terraform.runtask.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional pool of long-lived Python processes running {@code runner_worker.py}.
+ * Each worker has already paid for interpreter startup and the ansible_runner
+ * import, and takes jobs over its stdin/stdout pipe. ansible-runner still
+ * starts {@code ansible-playbook} as a child process for every job, so only the
+ * runner's own startup is saved, not the playbook's. Workers are health-checked
+ * while idle and recycled after a fixed number of jobs or a job that did not
+ * end cleanly. When no worker is available the caller falls back to
+ * fork-per-run.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WarmRunnerPool {
+
+    private static final String DONE_PREFIX = "{\"_worker\"";
+
+    private final ObjectMapper objectMapper;
+    private final RunWorkspaceManager workspaceManager;
+    private final RunTaskMetrics metrics;
+    private final RunSupervisor supervisor;
+
+    @Value("${ansible.runner.warm-pool.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ansible.runner.warm-pool.size:2}")
+    private int size;
+
+    @Value("${ansible.runner.warm-pool.max-jobs-per-worker:50}")
+    private int maxJobsPerWorker;
+
+    @Value("${ansible.runner.warm-pool.acquire-timeout-ms:0}")
+    private long acquireTimeoutMs;
+
+    @Value("${ansible.runner.warm-pool.health-check-interval-ms:30000}")
+    private long healthCheckIntervalMs;
+
+    @Value("${ansible.runner.python.path:python3.8}")
+    private String pythonPath;
+
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger live = new AtomicInteger();
+    private final AtomicInteger workerIds = new AtomicInteger();
+    private Path workerScript;
+    private ScheduledExecutorService maintenance;
+    private ExecutorService pings;
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path runsPath = workspaceManager.getRunsPath();
+        Files.createDirectories(runsPath);
+        workerScript = runsPath.resolve(".runner_worker.py");
+        try (InputStream in = new ClassPathResource("runner/runner_worker.py").getInputStream()) {
+            Files.copy(in, workerScript, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        metrics.gauge("ansible.runner.warm-pool.idle", "Warm runner workers ready for a job", idle::size);
+        metrics.gauge("ansible.runner.warm-pool.live", "Warm runner worker processes alive", live::get);
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(daemon("warm-runner-maintenance"));
+        pings = Executors.newCachedThreadPool(daemon("warm-runner-ping"));
+        maintenance.execute(this::replenish);
+        maintenance.scheduleWithFixedDelay(this::healthCheck,
+                healthCheckIntervalMs, healthCheckIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Warm runner pool enabled (size: {}, max jobs per worker: {}, limits: {})", size, maxJobsPerWorker,
+                supervisor.workerLimitPrefix().isEmpty() ? "none" : supervisor.workerLimitPrefix());
+        if (supervisor.isCpuSecondsCapped()) {
+            log.warn("runtask.supervisor.limits.cpu-seconds does not apply to runs on warm workers, "
+                    + "only runtask.supervisor.timeout-ms bounds them");
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (!enabled) {
+            return;
+        }
+        maintenance.shutdownNow();
+        pings.shutdownNow();
+        List<Worker> remaining = new ArrayList<>();
+        idle.drainTo(remaining);
+        remaining.forEach(Worker::destroy);
+    }
+
+    /**
+     * Runs a job on a warm worker.
+     *
+     * @return the ansible-runner status, or empty if no warm worker could take
+     *         the job and the caller should fork a runner instead
+     */
+    public Optional<String> execute(RunWorkspace workspace, String playbook, String inventoryPath,
+                                    String cmdline, RunSupervisor.Execution execution, AnsibleEventParser events)
+            throws IOException {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Worker worker;
+        try {
+            worker = idle.poll(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+        if (worker == null) {
+            log.info("No warm runner available for {}, falling back to fork-per-run", workspace.getIdent());
+            return Optional.empty();
+        }
+
+        ObjectNode job = objectMapper.createObjectNode()
+                .put("op", "run")
+                .put("private_data_dir", workspace.getPrivateDataDir().toString())
+                .put("playbook", playbook)
+                .put("inventory", inventoryPath)
+                .put("ident", workspace.getIdent())
+                .put("cmdline", cmdline);
+        try {
+            worker.send(objectMapper.writeValueAsString(job));
+        } catch (IOException e) {
+            // The job never reached the worker, so forking a fresh runner is safe
+            log.warn("Warm runner {} rejected job: {}", worker.id, e.getMessage());
+            retire(worker);
+            return Optional.empty();
+        }
+
+        // Cleared once the worker reports a status other than "error", the runner raising inside it
+        boolean clean = false;
+        execution.attach(worker.process);
+        try {
+            log.info("Executing {} on warm runner {}", workspace.getIdent(), worker.id);
+            String line;
+            while ((line = worker.readLine()) != null) {
+                if (line.startsWith(DONE_PREFIX)) {
+                    String status = objectMapper.readTree(line).path("status").asText("error");
+                    clean = !"error".equals(status);
+                    return Optional.of(status);
+                }
+                events.accept(line);
+            }
+            throw new IOException("Warm runner " + worker.id + " exited during job " + workspace.getIdent());
+        } finally {
+            execution.detach();
+            release(worker, clean && execution.getKilledReason() == null);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the worker to the pool, or retires it when the job did not end
+     * cleanly: lost pipe, kill, timeout or runner error. A failed playbook ran
+     * in its own ansible-playbook process and leaves the worker reusable.
+     */
+    private void release(Worker worker, boolean clean) {
+        worker.jobs++;
+        if (!clean || worker.jobs >= maxJobsPerWorker || !worker.process.isAlive()) {
+            log.info("Recycling warm runner {} after {} job(s)", worker.id, worker.jobs);
+            retire(worker);
+        } else {
+            idle.offer(worker);
+        }
+    }
+
+    private void retire(Worker worker) {
+        worker.destroy();
+        live.decrementAndGet();
+        if (!maintenance.isShutdown()) {
+            maintenance.execute(this::replenish);
+        }
+    }
+
+    private void replenish() {
+        while (live.get() < size) {
+            try {
+                idle.offer(spawn());
+                live.incrementAndGet();
+            } catch (IOException e) {
+                log.error("Failed to start warm runner, runs will fork until the next health check", e);
+                return;
+            }
+        }
+    }
+
+    private void healthCheck() {
+        List<Worker> snapshot = new ArrayList<>();
+        idle.drainTo(snapshot);
+        for (Worker worker : snapshot) {
+            if (ping(worker)) {
+                idle.offer(worker);
+            } else {
+                log.warn("Warm runner {} failed health check", worker.id);
+                worker.destroy();
+                live.decrementAndGet();
+            }
+        }
+        replenish();
+    }
+
+    private boolean ping(Worker worker) {
+        if (!worker.process.isAlive()) {
+            return false;
+        }
+        CompletableFuture<Boolean> pong = CompletableFuture.supplyAsync(() -> {
+            try {
+                worker.send("{\"op\":\"ping\"}");
+                String line = worker.readLine();
+                return line != null && line.contains("pong");
+            } catch (IOException e) {
+                return false;
+            }
+        }, pings);
+        try {
+            return pong.get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private Worker spawn() throws IOException {
+        // A worker executes one run at a time, so capping the worker caps the run and its ansible-playbook
+        List<String> command = new ArrayList<>(supervisor.workerLimitPrefix());
+        command.addAll(List.of(pythonPath, "-u", workerScript.toString()));
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.directory(workspaceManager.getRunsPath().toFile());
+        pb.redirectError(ProcessBuilder.Redirect.appendTo(
+                workspaceManager.getRunsPath().resolve("warm-runner.log").toFile()));
+        Worker worker = new Worker(workerIds.incrementAndGet(), pb.start());
+        log.debug("Started warm runner {} (pid {})", worker.id, worker.process.pid());
+        return worker;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Worker {
+        private final int id;
+        private final Process process;
+        private final BufferedWriter stdin;
+        private final BufferedReader stdout;
+        private int jobs;
+
+        private Worker(int id, Process process) {
+            this.id = id;
+            this.process = process;
+            this.stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            this.stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        private void send(String line) throws IOException {
+            stdin.write(line);
+            stdin.newLine();
+            stdin.flush();
+        }
+
+        private String readLine() throws IOException {
+            return stdout.readLine();
+        }
+
+        private void destroy() {
+            process.destroyForcibly();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+"""Long-lived ansible-runner worker used by the run-task service warm pool.
+
+The interpreter and ansible_runner are imported once; jobs then arrive as one
+JSON object per line on stdin. For each job the worker writes every job event
+as one JSON line on stdout, followed by a terminal line:
+
+    {"_worker": "done", "status": "successful", "rc": 0}
+
+A ping ({"op": "ping"}) is answered with {"_worker": "pong", "jobs": <n>}.
+Anything else the process prints is redirected to stderr so stdout stays a
+clean protocol channel.
+"""
+import json
+import os
+import sys
+
+# Reserve the real stdout for the protocol and route stray prints to stderr.
+_protocol = os.fdopen(os.dup(1), "w", buffering=1)
+os.dup2(2, 1)
+sys.stdout = sys.stderr
+
+import ansible_runner  # noqa: E402  (imported after the fd swap on purpose)
+
+
+def emit(obj):
+    _protocol.write(json.dumps(obj, default=str))
+    _protocol.write("\n")
+    _protocol.flush()
+
+
+def run_job(job):
+    def on_event(event):
+        emit(event)
+        return True
+
+    result = ansible_runner.run(
+        private_data_dir=job["private_data_dir"],
+        playbook=job["playbook"],
+        inventory=job.get("inventory"),
+        ident=job["ident"],
+        cmdline=job.get("cmdline"),
+        event_handler=on_event,
+        quiet=True,
+    )
+    return result.status, result.rc
+
+
+def main():
+    jobs = 0
+    for line in sys.stdin:
+        line = line.strip()
+        if not line:
+            continue
+        try:
+            job = json.loads(line)
+        except ValueError as exc:
+            emit({"_worker": "error", "message": "invalid request: %s" % exc})
+            continue
+
+        if job.get("op") == "ping":
+            emit({"_worker": "pong", "jobs": jobs})
+            continue
+
+        jobs += 1
+        try:
+            status, rc = run_job(job)
+            emit({"_worker": "done", "status": status, "rc": rc})
+        except Exception as exc:  # report and keep serving; Java decides on recycling
+            emit({"_worker": "done", "status": "error", "rc": -1, "message": str(exc)})
+
+
+if __name__ == "__main__":
+    main()
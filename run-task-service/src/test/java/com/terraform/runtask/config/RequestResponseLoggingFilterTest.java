@@ -0,0 +1,108 @@
+package com.terraform.runtask.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestResponseLoggingFilterTest {
+
+    private static final String TOKEN = "tfe-secret-token-value";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Logger accessLog = (Logger) LoggerFactory.getLogger("runtask.access");
+    private final ListAppender<ILoggingEvent> events = new ListAppender<>();
+    private Level previousLevel;
+
+    @BeforeEach
+    void setUp() {
+        previousLevel = accessLog.getLevel();
+        // DEBUG captures headers and bodies of every exchange
+        accessLog.setLevel(Level.DEBUG);
+        events.start();
+        accessLog.addAppender(events);
+    }
+
+    @AfterEach
+    void tearDown() {
+        accessLog.detachAppender(events);
+        accessLog.setLevel(previousLevel);
+    }
+
+    @Test
+    void redactsSecretFieldsAndHeaders() throws Exception {
+        JsonNode event = exchange(4096, "{\"run_id\":\"run-1\",\"access_token\":\"" + TOKEN + "\"}");
+
+        assertThat(event.path("request_body").asText())
+                .isEqualTo("{\"run_id\":\"run-1\",\"access_token\":\"***\"}");
+        assertThat(event.path("request_headers").path("Authorization").asText()).isEqualTo("***");
+        assertThat(event.path("request_headers").path("X-Other").asText()).isEqualTo("visible");
+        assertThat(event.path("response_body").asText()).isEqualTo("{\"status\":\"accepted\"}");
+        assertThat(event.has("request_body_truncated")).isFalse();
+    }
+
+    @Test
+    void redactsFieldCutOffByTheCaptureLimit() throws Exception {
+        String body = "{\"run_id\":\"run-1\",\"access_token\":\"" + TOKEN + "\"}";
+        // Cut in the middle of the token
+        int limit = body.indexOf(TOKEN) + 8;
+
+        JsonNode event = exchange(limit, body);
+
+        assertThat(event.path("request_body").asText()).isEqualTo("{\"run_id\":\"run-1\",\"access_token\":\"***");
+        assertThat(event.path("request_body").asText()).doesNotContain(TOKEN.substring(0, 8));
+        assertThat(event.path("request_body_truncated").asBoolean()).isTrue();
+    }
+
+    @Test
+    void redactsFieldCutOffAfterAnEscape() throws Exception {
+        String body = "{\"access_token\":\"ab\\\"cd" + TOKEN + "\"}";
+        int limit = body.indexOf("\\") + 1;
+
+        JsonNode event = exchange(limit, body);
+
+        assertThat(event.path("request_body").asText()).isEqualTo("{\"access_token\":\"***");
+    }
+
+    @Test
+    void redactsEscapedQuotesInsideTheValue() throws Exception {
+        JsonNode event = exchange(4096, "{\"access_token\":\"ab\\\"" + TOKEN + "\",\"stage\":\"post_plan\"}");
+
+        assertThat(event.path("request_body").asText())
+                .isEqualTo("{\"access_token\":\"***\",\"stage\":\"post_plan\"}");
+    }
+
+    private JsonNode exchange(int maxBodyBytes, String body) throws Exception {
+        RequestResponseLoggingFilter filter = new RequestResponseLoggingFilter(objectMapper, "/api/run-task",
+                1.0, 0.0, maxBodyBytes, "authorization,cookie,x-tfe-task-signature", "access_token");
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/run-task");
+        request.setContentType("application/json");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        request.addHeader("Authorization", "Bearer " + TOKEN);
+        request.addHeader("X-Other", "visible");
+        FilterChain chain = (req, res) -> {
+            req.getInputStream().readAllBytes();
+            res.getOutputStream().write("{\"status\":\"accepted\"}".getBytes(StandardCharsets.UTF_8));
+        };
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertThat(events.list).hasSize(1);
+        String logged = events.list.get(0).getFormattedMessage();
+        assertThat(logged).doesNotContain(TOKEN);
+        return objectMapper.readTree(logged);
+    }
+}
@@ -0,0 +1,320 @@
+package com.terraform.runtask.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.service.RunLinkSigner;
+import com.terraform.runtask.service.RunTaskMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookAdmissionFilterTest {
+
+    private static final String HMAC_KEY = "secret";
+    private static final String CANCEL_TOKEN = "cancel-secret";
+    private static final String READ_TOKEN = "read-secret";
+    private static final String BODY = "{\"run_id\":\"run-1\",\"organization_name\":\"org\"}";
+
+    private final WebhookAdmissionFilter filter = new WebhookAdmissionFilter(new ObjectMapper(),
+            new RunTaskMetrics(new SimpleMeterRegistry(), false), new RunLinkSigner("", 0), "/api/run-task", HMAC_KEY, "",
+            1024, 0, 0, 0, 0, false, 100);
+
+    private final WebhookAdmissionFilter cancelFilter = new WebhookAdmissionFilter(new ObjectMapper(),
+            new RunTaskMetrics(new SimpleMeterRegistry(), false), new RunLinkSigner("", 0), "/api/run-task", "", CANCEL_TOKEN,
+            1024, 0, 0, 0, 0, false, 100);
+
+    private final RunLinkSigner linkSigner = new RunLinkSigner(READ_TOKEN, 60_000);
+    private final WebhookAdmissionFilter readFilter = new WebhookAdmissionFilter(new ObjectMapper(),
+            new RunTaskMetrics(new SimpleMeterRegistry(), false), linkSigner, "/api/run-task", "", "",
+            1024, 0, 0, 0, 0, false, 100);
+
+    @Test
+    void admitsSignedWebhook() throws Exception {
+        MockHttpServletRequest request = webhook("/api/run-task", BODY);
+        request.addHeader("X-TFE-Task-Signature", sign(BODY));
+
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = filter(request, chain);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(chain.getRequest()).isNotNull();
+    }
+
+    @Test
+    void rejectsUnsignedWebhook() throws Exception {
+        assertRejected(webhook("/api/run-task", BODY), 401);
+    }
+
+    @Test
+    void rejectsUnsignedWebhookBehindPathParameters() throws Exception {
+        assertRejected(webhook("/api/run-task;x=1", BODY), 401);
+    }
+
+    @Test
+    void rejectsUnsignedWebhookBehindPercentEncoding() throws Exception {
+        assertRejected(webhook("/api/run%2Dtask", BODY), 401);
+    }
+
+    @Test
+    void capsBodyBehindPathParameters() throws Exception {
+        assertRejected(webhook("/api/run-task;x=1", "{\"pad\":\"" + "x".repeat(2048) + "\"}"), 413);
+    }
+
+    @Test
+    void passesOtherPathsThrough() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        filter(webhook("/api/run-task/test", BODY), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+    }
+
+    @Test
+    void admitsCancelWithBearerToken() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/runs/run-x/cancel");
+        request.addHeader("Authorization", "Bearer " + CANCEL_TOKEN);
+
+        MockFilterChain chain = new MockFilterChain();
+        cancelFilter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+    }
+
+    @Test
+    void rejectsCancelWithoutBearerToken() throws Exception {
+        assertRejected(cancelFilter, new MockHttpServletRequest("POST", "/api/runs/run-x/cancel"), 401);
+    }
+
+    @Test
+    void rejectsCancelWithWrongBearerToken() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/runs/run-x/cancel");
+        request.addHeader("Authorization", "Bearer wrong");
+
+        assertRejected(cancelFilter, request, 401);
+    }
+
+    @Test
+    void rejectsCancelBehindPathParameters() throws Exception {
+        assertRejected(cancelFilter, new MockHttpServletRequest("POST", "/api/runs/run-x/cancel;a"), 401);
+    }
+
+    @Test
+    void rejectsCancelBehindPercentEncoding() throws Exception {
+        assertRejected(cancelFilter, new MockHttpServletRequest("POST", "/api/runs/run-x/cance%6C"), 401);
+    }
+
+    @Test
+    void disablesCancelWithoutConfiguredToken() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/runs/run-x/cancel");
+        request.addHeader("Authorization", "Bearer anything");
+
+        assertRejected(filter, request, 403);
+    }
+
+    @Test
+    void disablesRunDataWithoutReadToken() throws Exception {
+        assertRejected(filter, read("/api/history/runs/run-x"), 403);
+        assertRejected(filter, read("/api/runs/run-x/output"), 403);
+    }
+
+    @Test
+    void admitsRunDataWithReadToken() throws Exception {
+        for (String path : new String[]{"/api/history", "/api/history/runs/run-x", "/api/queue",
+                "/api/runs/run-x/output", "/api/runs/run-x/events"}) {
+            MockHttpServletRequest request = read(path);
+            request.addHeader("Authorization", "Bearer " + READ_TOKEN);
+
+            assertAdmitted(readFilter, request);
+        }
+    }
+
+    @Test
+    void rejectsRunDataWithoutCredentials() throws Exception {
+        for (String path : new String[]{"/api/history", "/api/history;x=1", "/api/histor%79/runs/run-x",
+                "/api/queue", "/api/runs/run-x/output", "/api/runs/run-x/event%73"}) {
+            assertRejected(readFilter, read(path), 401);
+        }
+    }
+
+    @Test
+    void admitsOutputThroughSignedLink() throws Exception {
+        long expires = linkSigner.expiresAt();
+        String signature = linkSigner.sign("run-x", "post_apply", expires);
+
+        assertAdmitted(readFilter, link("/api/runs/run-x/output", "post_apply", expires, signature));
+        assertAdmitted(readFilter, link("/api/runs/run-x/events", "post_apply", expires, signature));
+    }
+
+    @Test
+    void rejectsSignedLinkForAnotherRunOrStage() throws Exception {
+        long expires = linkSigner.expiresAt();
+        String signature = linkSigner.sign("run-x", "post_apply", expires);
+
+        assertRejected(readFilter, link("/api/runs/run-y/output", "post_apply", expires, signature), 401);
+        assertRejected(readFilter, link("/api/runs/run-x/output", "pre_plan", expires, signature), 401);
+        assertRejected(readFilter, link("/api/history/runs/run-x", "post_apply", expires, signature), 401);
+    }
+
+    @Test
+    void rejectsExpiredSignedLink() throws Exception {
+        long expires = System.currentTimeMillis() / 1000 - 1;
+        String signature = linkSigner.sign("run-x", "post_apply", expires);
+
+        assertRejected(readFilter, link("/api/runs/run-x/output", "post_apply", expires, signature), 401);
+    }
+
+    @Test
+    void passesBufferedBodyDownstream() throws Exception {
+        MockHttpServletRequest request = webhook("/api/run-task", BODY);
+        request.addHeader("X-TFE-Task-Signature", sign(BODY));
+
+        MockFilterChain chain = new MockFilterChain();
+        filter(request, chain);
+
+        assertThat(new String(chain.getRequest().getInputStream().readAllBytes(), StandardCharsets.UTF_8))
+                .isEqualTo(BODY);
+    }
+
+    @Test
+    void rejectsWrongOrMalformedSignature() throws Exception {
+        MockHttpServletRequest wrong = webhook("/api/run-task", BODY);
+        wrong.addHeader("X-TFE-Task-Signature", sign(BODY.replace("run-1", "run-2")));
+        assertRejected(wrong, 401);
+
+        MockHttpServletRequest malformed = webhook("/api/run-task", BODY);
+        malformed.addHeader("X-TFE-Task-Signature", "not-hex");
+        assertRejected(malformed, 401);
+    }
+
+    @Test
+    void rateLimitsPerSource() throws Exception {
+        WebhookAdmissionFilter limited = rateLimited(2, 0, 100);
+
+        assertAdmitted(limited, webhookFrom("10.0.0.1"));
+        assertAdmitted(limited, webhookFrom("10.0.0.1"));
+        MockHttpServletResponse response = assertRejected(limited, webhookFrom("10.0.0.1"), 429);
+        assertThat(response.getHeader("Retry-After")).isNotNull();
+        assertAdmitted(limited, webhookFrom("10.0.0.2"));
+    }
+
+    @Test
+    void rateLimitsPerOrganization() throws Exception {
+        WebhookAdmissionFilter limited = rateLimited(0, 1, 100);
+
+        assertAdmitted(limited, webhookFrom("10.0.0.1"));
+        assertRejected(limited, webhookFrom("10.0.0.2"), 429);
+        assertAdmitted(limited, webhook("/api/run-task", BODY.replace("\"org\"", "\"other\"")));
+    }
+
+    @Test
+    void keysSourceOnForwardedForOnlyWhenTrusted() throws Exception {
+        WebhookAdmissionFilter trusting = new WebhookAdmissionFilter(new ObjectMapper(),
+                new RunTaskMetrics(new SimpleMeterRegistry(), false), new RunLinkSigner("", 0), "/api/run-task", "", "",
+                1024, 0.001, 1, 0, 0, true, 100);
+
+        assertAdmitted(trusting, forwardedFor("203.0.113.1, 10.0.0.1"));
+        assertRejected(trusting, forwardedFor("203.0.113.1"), 429);
+        assertAdmitted(trusting, forwardedFor("203.0.113.2, 10.0.0.1"));
+    }
+
+    @Test
+    void capsTrackedSourcesAndEvictsTheLeastRecentlyUsed() throws Exception {
+        WebhookAdmissionFilter limited = rateLimited(2, 0, 2);
+
+        assertAdmitted(limited, webhookFrom("10.0.0.1"));
+        assertAdmitted(limited, webhookFrom("10.0.0.2"));
+        // Table full: the sweep evicts 10.0.0.1, the least recently used, to admit a new source
+        assertAdmitted(limited, webhookFrom("10.0.0.3"));
+        // Full again and swept less than a second ago: new sources wait for the next sweep
+        assertRejected(limited, webhookFrom("10.0.0.4"), 429);
+        // Tracked sources are not affected
+        assertAdmitted(limited, webhookFrom("10.0.0.2"));
+    }
+
+    @Test
+    void passesHealthThrough() throws Exception {
+        assertAdmitted(readFilter, read("/api/health"));
+    }
+
+    private static void assertAdmitted(WebhookAdmissionFilter filter, MockHttpServletRequest request)
+            throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).as(request.getRequestURI()).isNotNull();
+    }
+
+    private static MockHttpServletRequest read(String uri) {
+        return new MockHttpServletRequest("GET", uri);
+    }
+
+    private static MockHttpServletRequest link(String uri, String stage, long expires, String signature) {
+        MockHttpServletRequest request = read(uri);
+        request.setParameter("stage", stage);
+        request.setParameter("expires", String.valueOf(expires));
+        request.setParameter("signature", signature);
+        return request;
+    }
+
+    private void assertRejected(MockHttpServletRequest request, int status) throws Exception {
+        assertRejected(filter, request, status);
+    }
+
+    private MockHttpServletResponse assertRejected(WebhookAdmissionFilter filter, MockHttpServletRequest request,
+                                                   int status) throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+
+        assertThat(response.getStatus()).as(request.getRequestURI()).isEqualTo(status);
+        assertThat(chain.getRequest()).isNull();
+        return response;
+    }
+
+    private MockHttpServletResponse filter(MockHttpServletRequest request, FilterChain chain) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest webhook(String uri, String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.setContentType("application/json");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    /** Unsigned webhooks, with buckets that effectively never refill during the test. */
+    private static WebhookAdmissionFilter rateLimited(int sourceBurst, int organizationBurst, int maxTrackedKeys) {
+        return new WebhookAdmissionFilter(new ObjectMapper(), new RunTaskMetrics(new SimpleMeterRegistry(), false),
+                new RunLinkSigner("", 0), "/api/run-task", "", "", 1024,
+                sourceBurst > 0 ? 0.001 : 0, sourceBurst, organizationBurst > 0 ? 0.001 : 0, organizationBurst,
+                false, maxTrackedKeys);
+    }
+
+    private static MockHttpServletRequest webhookFrom(String address) {
+        MockHttpServletRequest request = webhook("/api/run-task", BODY);
+        request.setRemoteAddr(address);
+        return request;
+    }
+
+    private static MockHttpServletRequest forwardedFor(String addresses) {
+        MockHttpServletRequest request = webhook("/api/run-task", BODY);
+        request.addHeader("X-Forwarded-For", addresses);
+        return request;
+    }
+
+    private static String sign(String body) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA512");
+        mac.init(new SecretKeySpec(HMAC_KEY.getBytes(StandardCharsets.UTF_8), "HmacSHA512"));
+        return HexFormat.of().formatHex(mac.doFinal(body.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,116 @@
+package com.terraform.runtask.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.model.RunRecord;
+import com.terraform.runtask.service.RunHistoryStore;
+import com.terraform.runtask.service.RunWorkspace;
+import com.terraform.runtask.service.RunWorkspaceManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RunOutputControllerTest {
+
+    @TempDir
+    Path runDir;
+
+    private final RunWorkspaceManager workspaceManager = mock(RunWorkspaceManager.class);
+    private final RunHistoryStore historyStore = mock(RunHistoryStore.class);
+    private final RunOutputController controller = new RunOutputController(new ObjectMapper(), workspaceManager,
+            historyStore, 4, 10, 1000);
+    private RunWorkspace workspace;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        workspace = new RunWorkspace("run-1-post_plan", runDir);
+        Path events = Files.createDirectories(workspace.getJobEventsDir());
+        // Counter order, not name order: 10 sorts before 2 as a string
+        Files.writeString(events.resolve("1-a.json"), "{\"event\":\"playbook_on_start\",\"stdout\":\"\"}");
+        Files.writeString(events.resolve("2-b.json"),
+                "{\"uuid\":\"b\",\"event_data\":{\"res\":{\"stdout\":\"not this\"}},\"stdout\":\"PLAY [all]\"}");
+        Files.writeString(events.resolve("10-c.json"), "{\"stdout\":\"ok: [web1]\",\"counter\":10}");
+        Files.writeString(events.resolve("11-d-partial.json"), "{\"stdout\":\"still being writ");
+        when(workspaceManager.findActive(anyString(), any())).thenReturn(Optional.empty());
+        when(historyStore.findByRunId("run-1")).thenReturn(List.of(RunRecord.builder()
+                .runId("run-1").stage("post_plan").ident("run-1-post_plan").build()));
+        when(workspaceManager.open("run-1-post_plan")).thenReturn(Optional.of(workspace));
+    }
+
+    @Test
+    void rendersStdoutOfJobEventsInCounterOrder() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.output("run-1", null, true, new MockHttpServletRequest("GET", "/api/runs/run-1/output"), response);
+
+        assertThat(response.getContentAsString()).isEqualTo("PLAY [all]\nok: [web1]\n");
+        assertThat(Files.readString(workspace.getOutputFile())).isEqualTo("PLAY [all]\nok: [web1]\n");
+    }
+
+    @Test
+    void servesSingleByteRanges() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/runs/run-1/output");
+        request.addHeader("Range", "bytes=11-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.output("run-1", null, true, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT.value());
+        assertThat(response.getHeader("Content-Range")).isEqualTo("bytes 11-21/22");
+        assertThat(response.getContentAsString()).isEqualTo("ok: [web1]\n");
+    }
+
+    @Test
+    void rejectsUnsatisfiableRange() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/runs/run-1/output");
+        request.addHeader("Range", "bytes=100-200");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.output("run-1", null, true, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+    }
+
+    @Test
+    void streamsCompletedEventsAsNdjson() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.events("run-1", "post_plan", response);
+
+        String[] lines = response.getContentAsString().split("\n");
+        assertThat(lines).hasSize(3);
+        assertThat(lines[2]).contains("ok: [web1]");
+    }
+
+    @Test
+    void resolvesRunDirectoryOnlyThroughHistory() {
+        when(historyStore.findByRunId("../run-1-post_plan")).thenReturn(List.of());
+
+        assertThatThrownBy(() -> controller.output("../run-1-post_plan", null, true,
+                new MockHttpServletRequest(), new MockHttpServletResponse()))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+        verify(workspaceManager, never()).open("../run-1-post_plan");
+    }
+
+    @Test
+    void filtersHistoryByStage() {
+        assertThatThrownBy(() -> controller.events("run-1", "pre_plan", new MockHttpServletResponse()))
+                .isInstanceOf(ResponseStatusException.class);
+    }
+}
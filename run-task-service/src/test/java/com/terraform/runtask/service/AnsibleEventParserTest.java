@@ -0,0 +1,111 @@
+package com.terraform.runtask.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.terraform.runtask.model.PlaybookSummary;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AnsibleEventParserTest {
+
+    private static final String EVENTS = """
+            {"event": "playbook_on_start", "event_data": {}}
+            {"event": "playbook_on_task_start", "event_data": {"task": "ping"}}
+            {"event": "runner_on_ok", "stdout": "ok: [web1]", "event_data": {"host": "web1", "task": "ping", "duration": 0.25, "res": {"changed": false, "ping": "pong"}}}
+            {"event": "runner_on_ok", "event_data": {"host": "web2", "task": "ping", "duration": 1.5, "res": {"changed": true, "nested": {"changed": false}}}}
+            {"event": "playbook_on_task_start", "event_data": {"task": "deploy"}}
+            {"event": "runner_on_failed", "event_data": {"host": "web2", "task": "deploy", "duration": 3, "res": {"msg": "boom"}}}
+            {"event": "runner_on_unreachable", "event_data": {"host": "db1", "task": "deploy", "res": {"unreachable": true}}}
+            {"event": "runner_on_skipped", "event_data": {"host": "web1", "task": "deploy"}}
+            {"event": "playbook_on_stats", "event_data": {"ok": {"web1": 1, "web2": 1}, "changed": {"web2": 1}, "failures": {"web2": 1}, "dark": {"db1": 1}, "skipped": {"web1": 1}}}
+            """;
+
+    @Test
+    void foldsEventStreamIntoSummary() throws IOException {
+        AnsibleEventParser parser = new AnsibleEventParser(new JsonFactory(), 10);
+        parser.consume(stream(EVENTS));
+        PlaybookSummary summary = parser.finish("failed");
+
+        assertThat(summary.getStatus()).isEqualTo("failed");
+        assertThat(summary.getEventCount()).isEqualTo(9);
+        assertThat(summary.getTaskCount()).isEqualTo(2);
+        assertThat(summary.getHosts()).containsOnlyKeys("web1", "web2", "db1");
+        assertThat(summary.getHosts().get("web2").getChanged()).isEqualTo(1);
+        assertThat(summary.getHosts().get("web2").getFailed()).isEqualTo(1);
+        assertThat(summary.getHosts().get("db1").getUnreachable()).isEqualTo(1);
+        assertThat(summary.getFailedHosts()).containsExactlyInAnyOrder("web2", "db1");
+        assertThat(parser.getFirstEventNanos()).isNotZero();
+    }
+
+    @Test
+    void recapWinsOverRunningTallies() throws IOException {
+        AnsibleEventParser parser = new AnsibleEventParser(new JsonFactory(), 10);
+        parser.consume(stream("""
+                {"event": "runner_on_ok", "event_data": {"host": "web1", "task": "ping"}}
+                {"event": "playbook_on_stats", "event_data": {"ok": {"web1": 7}}}
+                """));
+
+        assertThat(parser.finish("successful").getHosts().get("web1").getOk()).isEqualTo(7);
+    }
+
+    @Test
+    void keepsOnlyTheSlowestTasksLongestFirst() throws IOException {
+        AnsibleEventParser parser = new AnsibleEventParser(new JsonFactory(), 2);
+        parser.consume(stream(EVENTS));
+
+        List<PlaybookSummary.TaskTiming> slowest = parser.finish("failed").getSlowestTasks();
+        assertThat(slowest).extracting(PlaybookSummary.TaskTiming::getDurationMs).containsExactly(3000L, 1500L);
+        assertThat(slowest.get(0).getTask()).isEqualTo("deploy");
+        assertThat(slowest.get(0).getHost()).isEqualTo("web2");
+    }
+
+    @Test
+    void reportsProgressAfterEveryEvent() throws IOException {
+        AnsibleEventParser parser = new AnsibleEventParser(new JsonFactory(), 10);
+        List<AnsibleEventParser.Progress> snapshots = new ArrayList<>();
+        parser.onProgress(snapshots::add);
+        parser.consume(stream(EVENTS));
+
+        assertThat(snapshots).hasSize(9);
+        AnsibleEventParser.Progress afterFailure = snapshots.get(5);
+        assertThat(afterFailure.tasks()).isEqualTo(2);
+        assertThat(afterFailure.currentTask()).isEqualTo("deploy");
+        assertThat(afterFailure.ok()).isEqualTo(2);
+        assertThat(afterFailure.changed()).isEqualTo(1);
+        assertThat(afterFailure.failed()).isEqualTo(1);
+        assertThat(afterFailure.failingHosts()).containsExactly("web2");
+        assertThat(snapshots.get(8).failingHosts()).containsExactly("web2", "db1");
+        assertThat(snapshots.get(0).currentTask()).isNull();
+    }
+
+    @Test
+    void acceptsConcatenatedEventsAndSkipsNonObjects() throws IOException {
+        AnsibleEventParser parser = new AnsibleEventParser(new JsonFactory(), 10);
+        parser.consume(stream("[1, 2]{\"event\": \"playbook_on_task_start\", \"event_data\": {\"task\": \"a\"}}"
+                + "{\"event\": \"runner_on_ok\", \"event_data\": \"not an object\"}"));
+
+        PlaybookSummary summary = parser.finish("successful");
+        assertThat(summary.getEventCount()).isEqualTo(2);
+        assertThat(summary.getTaskCount()).isEqualTo(1);
+        assertThat(summary.getHosts()).containsOnlyKeys("unknown");
+    }
+
+    @Test
+    void acceptsOneEventPerLine() throws IOException {
+        AnsibleEventParser parser = new AnsibleEventParser(new JsonFactory(), 10);
+        parser.accept("{\"event\": \"runner_on_skipped\", \"event_data\": {\"host\": \"web1\"}}");
+        parser.accept("");
+
+        assertThat(parser.finish("successful").getHosts().get("web1").getSkipped()).isEqualTo(1);
+    }
+
+    private static ByteArrayInputStream stream(String events) {
+        return new ByteArrayInputStream(events.getBytes(StandardCharsets.UTF_8));
+    }
+}
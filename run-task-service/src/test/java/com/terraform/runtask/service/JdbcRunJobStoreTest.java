@@ -0,0 +1,184 @@
+package com.terraform.runtask.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.model.TerraformWebhook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JdbcRunJobStoreTest {
+
+    private static final long LEASE_MS = 300;
+    private static final PlaybookRoute ROUTE = PlaybookRoute.run("network", "network.yml", "inventory/network",
+            "{\"env\":\"prod\"}", true);
+
+    private final List<JdbcRunJobStore> stores = new ArrayList<>();
+    private JdbcTemplate jdbc;
+    private JdbcRunJobStore nodeA;
+    private JdbcRunJobStore nodeB;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:jobs-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        nodeA = store("node-a");
+        nodeB = store("node-b");
+    }
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(JdbcRunJobStore::stop);
+        jdbc.execute("SHUTDOWN");
+    }
+
+    @Test
+    void claimedRunCarriesItsRoute() throws InterruptedException {
+        assertThat(nodeA.submit(webhook("run-1", "task-1"), ROUTE, 1, null, 10))
+                .isEqualTo(RunJobStore.Submission.QUEUED);
+
+        RunJob job = nodeB.take();
+
+        assertThat(job.getWebhook().getRunId()).isEqualTo("run-1");
+        assertThat(job.getRoute().getName()).isEqualTo("network");
+        assertThat(job.getRoute().getPlaybook()).isEqualTo("network.yml");
+        assertThat(job.getRoute().getInventory()).isEqualTo("inventory/network");
+        assertThat(job.getRoute().getExtraVarsJson()).isEqualTo("{\"env\":\"prod\"}");
+        assertThat(job.getRoute().isCacheable()).isTrue();
+        assertThat(job.getAttempt()).isEqualTo(1);
+    }
+
+    @Test
+    void runQueuedWithoutRouteHasNone() throws InterruptedException {
+        jdbc.update("""
+                INSERT INTO run_jobs (task_result_id, priority, state, webhook, enqueued_at)
+                VALUES ('task-1', 1, 'QUEUED', '{"run_id":"run-1"}', 0)""");
+
+        assertThat(nodeA.take().getRoute()).isNull();
+    }
+
+    @Test
+    void coalescingReplacesWebhookAndRoute() throws InterruptedException {
+        PlaybookRoute reloaded = PlaybookRoute.run("network-v2", "network-v2.yml", "inventory/network", null, true);
+        nodeA.submit(webhook("run-1", "task-1"), ROUTE, 1, "org/ws/post_apply", 10);
+
+        assertThat(nodeB.submit(webhook("run-2", "task-2"), reloaded, 1, "org/ws/post_apply", 10))
+                .isEqualTo(RunJobStore.Submission.COALESCED);
+
+        RunJob job = nodeA.take();
+        assertThat(job.getWebhook().getRunId()).isEqualTo("run-2");
+        assertThat(job.getRoute().getName()).isEqualTo("network-v2");
+        assertThat(job.getCoalesced()).extracting(TerraformWebhook::getRunId).containsExactly("run-1");
+        assertThat(nodeA.size()).isZero();
+    }
+
+    @Test
+    void rejectsRedeliveryOfSupersededTaskResult() {
+        nodeA.submit(webhook("run-1", "task-1"), ROUTE, 1, "org/ws/post_apply", 10);
+        nodeA.submit(webhook("run-2", "task-2"), ROUTE, 1, "org/ws/post_apply", 10);
+
+        // task-1 was folded into run-2's slot, and still answers for it there
+        assertThat(nodeB.submit(webhook("run-1", "task-1"), ROUTE, 1, "org/ws/post_apply", 10))
+                .isEqualTo(RunJobStore.Submission.DUPLICATE);
+        assertThat(nodeB.submit(webhook("run-1", "task-1"), ROUTE, 1, null, 10))
+                .isEqualTo(RunJobStore.Submission.DUPLICATE);
+    }
+
+    @Test
+    void rejectsRedeliveryUntilTheRunCompletes() throws InterruptedException {
+        nodeA.submit(webhook("run-1", "task-1"), ROUTE, 1, null, 10);
+        RunJob job = nodeA.take();
+
+        assertThat(nodeB.submit(webhook("run-1", "task-1"), ROUTE, 1, null, 10))
+                .isEqualTo(RunJobStore.Submission.DUPLICATE);
+
+        nodeA.complete(job);
+
+        assertThat(nodeB.submit(webhook("run-1", "task-1"), ROUTE, 1, null, 10))
+                .isEqualTo(RunJobStore.Submission.QUEUED);
+    }
+
+    @Test
+    void rejectsBeyondCapacityAndFreesTheTaskResult() {
+        nodeA.submit(webhook("run-1", "task-1"), ROUTE, 1, null, 1);
+
+        assertThat(nodeA.submit(webhook("run-2", "task-2"), ROUTE, 1, null, 1))
+                .isEqualTo(RunJobStore.Submission.FULL);
+        assertThat(nodeA.submit(webhook("run-2", "task-2"), ROUTE, 1, null, 2))
+                .isEqualTo(RunJobStore.Submission.QUEUED);
+    }
+
+    @Test
+    void claimsMandatoryRunsFirst() throws InterruptedException {
+        nodeA.submit(webhook("advisory", "task-1"), ROUTE, 1, null, 10);
+        nodeA.submit(webhook("mandatory", "task-2"), ROUTE, 0, null, 10);
+
+        assertThat(nodeB.take().getWebhook().getRunId()).isEqualTo("mandatory");
+        assertThat(nodeB.take().getWebhook().getRunId()).isEqualTo("advisory");
+    }
+
+    @Test
+    void reclaimsRunWhoseOwnerStoppedRenewing() throws Exception {
+        nodeA.submit(webhook("run-1", "task-1"), ROUTE, 1, null, 10);
+        RunJob lost = nodeA.take();
+        nodeA.stop();
+
+        Thread.sleep(2 * LEASE_MS);
+        RunJob reclaimed = nodeB.take();
+
+        assertThat(reclaimed.getId()).isEqualTo(lost.getId());
+        assertThat(reclaimed.getAttempt()).isEqualTo(2);
+        assertThat(reclaimed.getRoute().getName()).isEqualTo("network");
+        // The previous owner no longer holds the lease and cannot remove the run
+        nodeA.complete(lost);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM run_jobs", Integer.class)).isEqualTo(1);
+        nodeB.complete(reclaimed);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM run_jobs", Integer.class)).isZero();
+    }
+
+    @Test
+    void heartbeatKeepsTheLease() throws Exception {
+        nodeA.submit(webhook("run-1", "task-1"), ROUTE, 1, null, 10);
+        nodeA.take();
+
+        Thread.sleep(3 * LEASE_MS);
+
+        assertThat(jdbc.queryForObject("SELECT owner FROM run_jobs", String.class)).isEqualTo("node-a");
+        assertThat(jdbc.queryForObject("SELECT lease_until FROM run_jobs", Long.class))
+                .isGreaterThan(System.currentTimeMillis());
+    }
+
+    @Test
+    void releaseRequeuesWithoutCountingTheAttempt() throws InterruptedException {
+        nodeA.submit(webhook("run-1", "task-1"), ROUTE, 1, null, 10);
+        nodeA.release(nodeA.take());
+
+        RunJob job = nodeB.take();
+
+        assertThat(job.getAttempt()).isEqualTo(1);
+    }
+
+    private JdbcRunJobStore store(String nodeId) {
+        JdbcRunJobStore store = new JdbcRunJobStore(jdbc, new ObjectMapper(), nodeId, LEASE_MS, 20);
+        store.start();
+        stores.add(store);
+        return store;
+    }
+
+    private static TerraformWebhook webhook(String runId, String taskResultId) {
+        return TerraformWebhook.builder()
+                .runId(runId)
+                .taskResultId(taskResultId)
+                .organizationName("org")
+                .workspaceName("ws")
+                .stage("post_apply")
+                .build();
+    }
+}
@@ -0,0 +1,102 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.config.ExecutionThreads;
+import com.terraform.runtask.model.PlaybookSummary;
+import com.terraform.runtask.model.TerraformWebhook;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RunExecutionQueueTest {
+
+    private static final int WORKERS = 2;
+
+    private final AnsibleRunnerService ansibleRunnerService = mock(AnsibleRunnerService.class);
+    private final PlaybookRouter router = mock(PlaybookRouter.class);
+    private final CountDownLatch releaseBusyOrganization = new CountDownLatch(1);
+    private RunExecutionQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        when(router.route(any())).thenReturn(PlaybookRoute.run("default", "site.yml", null, null, false));
+        when(ansibleRunnerService.executePlaybookAndCallback(any(), any(), anyList())).thenAnswer(invocation -> {
+            TerraformWebhook webhook = invocation.getArgument(0);
+            if ("busy".equals(webhook.getOrganizationName())) {
+                releaseBusyOrganization.await();
+            }
+            PlaybookSummary summary = new PlaybookSummary();
+            summary.setStatus("successful");
+            return summary;
+        });
+        RunScheduler scheduler = new RunScheduler(WORKERS, 1, 0, 0, "", "");
+        queue = new RunExecutionQueue(ansibleRunnerService, mock(TerraformCallbackService.class),
+                mock(RunIdempotencyIndex.class), new ExecutionThreads(false),
+                new RunTaskMetrics(new SimpleMeterRegistry(), false), mock(RunHistoryStore.class),
+                new LocalRunJobStore(), scheduler, router, mock(RunResultCache.class), mock(RunSupervisor.class));
+        ReflectionTestUtils.setField(queue, "capacity", 100);
+        ReflectionTestUtils.setField(queue, "workers", WORKERS);
+        ReflectionTestUtils.setField(queue, "coalescePolicy", "none");
+        ReflectionTestUtils.setField(queue, "maxAttempts", 2);
+        queue.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseBusyOrganization.countDown();
+        queue.stop();
+    }
+
+    @Test
+    void runsOfBlockedOrganizationDoNotHoldUpOthers() {
+        // One running, the rest blocked by max-per-organization=1: more than twice the workers
+        for (int i = 0; i < 4 * WORKERS; i++) {
+            assertThat(queue.submit(webhook("run-busy-" + i, "busy"))).isTrue();
+        }
+        assertThat(queue.submit(webhook("run-quiet", "quiet"))).isTrue();
+
+        verify(ansibleRunnerService, timeout(10_000)).executePlaybookAndCallback(
+                argThat(webhook -> "run-quiet".equals(webhook.getRunId())), any(), anyList());
+    }
+
+    @Test
+    void runExecutesTheRouteItWasAcceptedWith() {
+        PlaybookRoute accepted = PlaybookRoute.run("accepted", "accepted.yml", null, null, false);
+        PlaybookRoute reloaded = PlaybookRoute.run("reloaded", "reloaded.yml", null, null, false);
+        when(router.route(any())).thenReturn(accepted, reloaded);
+        // Queued behind the busy organization's limit while the table is "reloaded"
+        assertThat(queue.submit(webhook("run-busy-1", "busy"))).isTrue();
+        assertThat(queue.submit(webhook("run-busy-2", "busy"))).isTrue();
+
+        releaseBusyOrganization.countDown();
+        verify(ansibleRunnerService, timeout(10_000)).executePlaybookAndCallback(
+                argThat(webhook -> "run-busy-1".equals(webhook.getRunId())), eq(accepted), anyList());
+        verify(ansibleRunnerService, timeout(10_000)).executePlaybookAndCallback(
+                argThat(webhook -> "run-busy-2".equals(webhook.getRunId())), eq(reloaded), anyList());
+        verify(router, times(2)).route(any());
+    }
+
+    static TerraformWebhook webhook(String runId, String organization) {
+        return TerraformWebhook.builder()
+                .runId(runId)
+                .stage("post_apply")
+                .taskResultId("task-" + runId)
+                .organizationName(organization)
+                .workspaceId("ws-" + runId)
+                .build();
+    }
+}
@@ -0,0 +1,156 @@
+package com.terraform.runtask.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.model.PlaybookSummary;
+import com.terraform.runtask.model.RunHistoryPage;
+import com.terraform.runtask.model.RunRecord;
+import com.terraform.runtask.model.TerraformWebhook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RunHistoryStoreTest {
+
+    private final RunWorkspaceManager workspaceManager = mock(RunWorkspaceManager.class);
+    private JdbcTemplate jdbc;
+    private RunHistoryStore store;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:history-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        when(workspaceManager.delete(anyString())).thenReturn(true);
+        store = store(0, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.stop();
+        jdbc.execute("SHUTDOWN");
+    }
+
+    @Test
+    void pagesThroughTiesWithoutSkippingOrRepeating() {
+        // Several runs finishing in the same millisecond, ordered among themselves by id
+        for (int i = 0; i < 7; i++) {
+            record("run-" + i, "org", 1000 + i / 3, "ident-" + i);
+        }
+
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            RunHistoryPage page = store.list(null, null, null, null, null, null, cursor, 2);
+            assertThat(page.getItems()).hasSizeLessThanOrEqualTo(2);
+            page.getItems().forEach(run -> seen.add(run.getRunId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(4);
+        assertThat(seen).containsExactly("run-6", "run-5", "run-4", "run-3", "run-2", "run-1", "run-0");
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        record("run-1", "org", 1000, null);
+        record("run-2", "org", 2000, null);
+
+        RunHistoryPage page = store.list(null, null, null, null, null, null, null, 2);
+
+        assertThat(page.getItems()).hasSize(2);
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    void cursorKeepsTheFilters() {
+        for (int i = 0; i < 4; i++) {
+            record("a-" + i, "a", 1000 + i, null);
+            record("b-" + i, "b", 1000 + i, null);
+        }
+
+        RunHistoryPage first = store.list("a", null, null, null, null, null, null, 3);
+        RunHistoryPage second = store.list("a", null, null, null, null, null, first.getNextCursor(), 3);
+
+        assertThat(first.getItems()).extracting(RunRecord::getRunId).containsExactly("a-3", "a-2", "a-1");
+        assertThat(second.getItems()).extracting(RunRecord::getRunId).containsExactly("a-0");
+        assertThat(store.list(null, null, null, null, Instant.ofEpochMilli(1002), Instant.ofEpochMilli(1003),
+                null, 10).getItems()).extracting(RunRecord::getRunId).containsExactlyInAnyOrder("a-2", "b-2");
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        assertThatThrownBy(() -> store.list(null, null, null, null, null, null, "not-a-cursor", 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void retentionDeletesRunDirectoriesNoRowRefersTo() {
+        store.stop();
+        store = store(0, 2);
+        record("run-1", "org", 1000, "shared");
+        record("run-2", "org", 2000, "alone");
+        // Coalesced into the same execution as run-1, and kept
+        record("run-3", "org", 3000, "shared");
+        record("run-4", "org", 4000, "newest");
+
+        store.applyRetention();
+
+        assertThat(store.count()).isEqualTo(2);
+        assertThat(store.findByRunId("run-1")).isEmpty();
+        verify(workspaceManager).delete("alone");
+        verify(workspaceManager, never()).delete("shared");
+        verify(workspaceManager, never()).delete("newest");
+    }
+
+    @Test
+    void retentionDropsRowsOlderThanRetentionDays() {
+        store.stop();
+        store = store(1, 0);
+        record("old", "org", Instant.now().minusSeconds(3 * 86400).toEpochMilli(), "old");
+        record("new", "org", System.currentTimeMillis(), "new");
+
+        store.applyRetention();
+
+        assertThat(store.findByRunId("old")).isEmpty();
+        assertThat(store.findByRunId("new")).hasSize(1);
+        verify(workspaceManager).delete("old");
+    }
+
+    private RunHistoryStore store(int retentionDays, long maxRows) {
+        RunHistoryStore store = new RunHistoryStore(jdbc, new ObjectMapper(), workspaceManager,
+                retentionDays, maxRows, 3_600_000);
+        store.start();
+        return store;
+    }
+
+    private void record(String runId, String organization, long finishedAt, String ident) {
+        PlaybookSummary summary = new PlaybookSummary();
+        summary.setStatus("successful");
+        summary.setIdent(ident);
+        summary.host("web1").setOk(1);
+        TerraformWebhook webhook = TerraformWebhook.builder()
+                .runId(runId)
+                .taskResultId("task-" + runId)
+                .organizationName(organization)
+                .workspaceName("ws")
+                .stage("post_plan")
+                .build();
+        store.record(webhook, null, summary, finishedAt - 20, finishedAt - 10, finishedAt);
+    }
+}
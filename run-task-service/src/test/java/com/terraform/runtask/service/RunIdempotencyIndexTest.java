@@ -0,0 +1,140 @@
+package com.terraform.runtask.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.terraform.runtask.model.TerraformWebhook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RunIdempotencyIndexTest {
+
+    private static final long TTL_MS = 50;
+
+    private RunIdempotencyIndex index;
+
+    @AfterEach
+    void tearDown() {
+        if (index != null) {
+            index.stop();
+        }
+    }
+
+    @Test
+    void inFlightEntryOutlivesTheTtl() throws Exception {
+        index = start("");
+        TerraformWebhook webhook = webhook("run-1", "task-1");
+        assertThat(index.register(webhook)).isEqualTo(RunIdempotencyIndex.Admission.NEW);
+
+        Thread.sleep(3 * TTL_MS);
+        ReflectionTestUtils.invokeMethod(index, "evictExpired");
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.register(webhook)).isEqualTo(RunIdempotencyIndex.Admission.DUPLICATE_IN_FLIGHT);
+    }
+
+    @Test
+    void completedEntryExpiresAfterTheTtl() throws Exception {
+        index = start("");
+        TerraformWebhook webhook = webhook("run-1", "task-1");
+        index.register(webhook);
+        Thread.sleep(3 * TTL_MS);
+        index.markCompleted(webhook, "passed");
+        assertThat(index.register(webhook)).isEqualTo(RunIdempotencyIndex.Admission.DUPLICATE_COMPLETED);
+
+        Thread.sleep(3 * TTL_MS);
+        ReflectionTestUtils.invokeMethod(index, "evictExpired");
+
+        assertThat(index.size()).isZero();
+        assertThat(index.register(webhook)).isEqualTo(RunIdempotencyIndex.Admission.NEW);
+    }
+
+    @Test
+    void replaysCompletedTaskResultsAfterRestart(@TempDir Path dir) throws Exception {
+        // The directory does not exist yet: the index creates it before the first append
+        Path journal = dir.resolve("state/idempotency.jsonl");
+        index = start(journal.toString(), 60_000);
+        index.register(webhook("run-1", "task-1"));
+        index.markCompleted(webhook("run-1", "task-1"), "passed");
+        index.register(webhook("run-2", "task-2"));
+        index.stop();
+
+        index = start(journal.toString(), 60_000);
+
+        assertThat(index.register(webhook("run-1", "task-1")))
+                .isEqualTo(RunIdempotencyIndex.Admission.DUPLICATE_COMPLETED);
+        // In flight when the node stopped: its queue is gone, so it runs again
+        assertThat(index.register(webhook("run-2", "task-2"))).isEqualTo(RunIdempotencyIndex.Admission.NEW);
+    }
+
+    @Test
+    void skipsExpiredAndCorruptJournalLines(@TempDir Path dir) throws Exception {
+        Path journal = dir.resolve("idempotency.jsonl");
+        long now = System.currentTimeMillis();
+        Files.write(journal, List.of(
+                "{\"task_result_id\":\"task-old\",\"run_id\":\"run-old\",\"status\":\"passed\",\"updated_at\":"
+                        + (now - 120_000) + "}",
+                "not json",
+                "{\"task_result_id\":\"task-new\",\"run_id\":\"run-new\",\"status\":\"failed\",\"updated_at\":"
+                        + now + "}"));
+
+        index = start(journal.toString(), 60_000);
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.register(webhook("run-new", "task-new")))
+                .isEqualTo(RunIdempotencyIndex.Admission.DUPLICATE_COMPLETED);
+        assertThat(index.register(webhook("run-old", "task-old"))).isEqualTo(RunIdempotencyIndex.Admission.NEW);
+        // Compacted at load: only the live entry is left
+        assertThat(Files.readAllLines(journal)).hasSize(1).allMatch(line -> line.contains("task-new"));
+    }
+
+    @Test
+    void forgetsOnlyInFlightEntries() throws Exception {
+        index = start("");
+        index.register(webhook("run-1", "task-1"));
+        index.register(webhook("run-2", "task-2"));
+        index.markCompleted(webhook("run-2", "task-2"), "passed");
+
+        index.forget(webhook("run-1", "task-1"));
+        index.forget(webhook("run-2", "task-2"));
+
+        assertThat(index.register(webhook("run-1", "task-1"))).isEqualTo(RunIdempotencyIndex.Admission.NEW);
+        assertThat(index.register(webhook("run-2", "task-2")))
+                .isEqualTo(RunIdempotencyIndex.Admission.DUPLICATE_COMPLETED);
+    }
+
+    @Test
+    void neverDeduplicatesWebhooksWithoutTaskResult() throws Exception {
+        index = start("");
+
+        assertThat(index.register(webhook("run-1", null))).isEqualTo(RunIdempotencyIndex.Admission.NEW);
+        assertThat(index.register(webhook("run-1", null))).isEqualTo(RunIdempotencyIndex.Admission.NEW);
+        assertThat(index.size()).isZero();
+    }
+
+    private static RunIdempotencyIndex start(String storeFile) throws IOException {
+        return start(storeFile, TTL_MS);
+    }
+
+    private static RunIdempotencyIndex start(String storeFile, long ttlMs) throws IOException {
+        RunIdempotencyIndex index = new RunIdempotencyIndex(new ObjectMapper());
+        ReflectionTestUtils.setField(index, "ttlMs", ttlMs);
+        ReflectionTestUtils.setField(index, "storeFile", storeFile);
+        index.start();
+        return index;
+    }
+
+    static TerraformWebhook webhook(String runId, String taskResultId) {
+        return TerraformWebhook.builder()
+                .runId(runId)
+                .taskResultId(taskResultId)
+                .build();
+    }
+}
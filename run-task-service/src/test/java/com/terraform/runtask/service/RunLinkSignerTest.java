@@ -0,0 +1,55 @@
+package com.terraform.runtask.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RunLinkSignerTest {
+
+    private final RunLinkSigner signer = new RunLinkSigner("read-token", 60_000);
+
+    @Test
+    void verifiesLinksForTheSignedRunAndStageOnly() {
+        long expires = signer.expiresAt();
+        String signature = signer.sign("run-1", "post_plan", expires);
+
+        assertThat(signer.verify("run-1", "post_plan", String.valueOf(expires), signature)).isTrue();
+        assertThat(signer.verify("run-2", "post_plan", String.valueOf(expires), signature)).isFalse();
+        assertThat(signer.verify("run-1", "post_apply", String.valueOf(expires), signature)).isFalse();
+        assertThat(signer.verify("run-1", null, String.valueOf(expires), signature)).isFalse();
+        assertThat(signer.verify("run-1", "post_plan", String.valueOf(expires + 1), signature)).isFalse();
+    }
+
+    @Test
+    void runWideLinkCoversEveryStage() {
+        long expires = signer.expiresAt();
+        String signature = signer.sign("run-1", null, expires);
+
+        assertThat(signer.verify("run-1", "post_plan", String.valueOf(expires), signature)).isTrue();
+        assertThat(signer.verify("run-1", null, String.valueOf(expires), signature)).isTrue();
+    }
+
+    @Test
+    void rejectsExpiredAndMalformedLinks() {
+        long expired = System.currentTimeMillis() / 1000 - 1;
+
+        assertThat(signer.verify("run-1", null, String.valueOf(expired), signer.sign("run-1", null, expired)))
+                .isFalse();
+        assertThat(signer.verify("run-1", null, "soon", "00")).isFalse();
+        assertThat(signer.verify("run-1", null, String.valueOf(signer.expiresAt()), "not-hex")).isFalse();
+        assertThat(signer.verify("run-1", null, null, null)).isFalse();
+    }
+
+    @Test
+    void withoutTokenNothingIsServed() {
+        RunLinkSigner disabled = new RunLinkSigner("", 60_000);
+
+        assertThat(disabled.isEnabled()).isFalse();
+        assertThat(disabled.isValidToken("")).isFalse();
+        assertThat(disabled.verify("run-1", null, String.valueOf(disabled.expiresAt()), "00")).isFalse();
+        assertThatThrownBy(() -> disabled.sign("run-1", null, 0)).isInstanceOf(IllegalStateException.class);
+        assertThat(signer.isValidToken("read-token")).isTrue();
+        assertThat(signer.isValidToken("read-tokem")).isFalse();
+    }
+}
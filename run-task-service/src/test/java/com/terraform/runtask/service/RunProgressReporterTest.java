@@ -0,0 +1,64 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.model.TerraformCallback;
+import com.terraform.runtask.model.TerraformWebhook;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RunProgressReporterTest {
+
+    private final TerraformCallbackService callbackService = mock(TerraformCallbackService.class);
+    private RunProgressReporter reporter;
+
+    @BeforeEach
+    void setUp() {
+        when(callbackService.sendProgress(any(), any(), any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(true));
+        // One PATCH per second, progress due on every flush
+        reporter = new RunProgressReporter(callbackService, new RunTaskMetrics(new SimpleMeterRegistry(), false),
+                true, 0, 1000, 1);
+    }
+
+    @Test
+    void initialUpdateOverBudgetIsSentByTheFlusher() throws Exception {
+        reporter.start(webhook("run-1"), List.of());
+        reporter.start(webhook("run-2"), List.of());
+
+        verify(callbackService).sendProgress(eq("https://tfe/run-1"), started(), any(), any());
+        verify(callbackService, never()).sendProgress(eq("https://tfe/run-2"), any(), any(), any());
+
+        Thread.sleep(1100);
+        ReflectionTestUtils.invokeMethod(reporter, "flush");
+
+        verify(callbackService).sendProgress(eq("https://tfe/run-2"), started(), any(), any());
+        verify(callbackService, times(2)).sendProgress(any(), any(), any(), any());
+    }
+
+    private static TerraformCallback started() {
+        return argThat(callback -> "running".equals(callback.getStatus())
+                && callback.getMessage().startsWith("Ansible playbook execution started"));
+    }
+
+    private static TerraformWebhook webhook(String runId) {
+        return TerraformWebhook.builder()
+                .runId(runId)
+                .taskResultId("task-" + runId)
+                .taskResultCallbackUrl("https://tfe/" + runId)
+                .accessToken("token")
+                .build();
+    }
+}
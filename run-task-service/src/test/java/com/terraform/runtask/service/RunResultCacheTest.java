@@ -0,0 +1,162 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.model.PlaybookSummary;
+import com.terraform.runtask.model.TerraformWebhook;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RunResultCacheTest {
+
+    private static final PlaybookRoute CACHEABLE = PlaybookRoute.run("lint", "lint.yml", "inventory/hosts", null, true);
+
+    @TempDir
+    Path project;
+
+    private final RunWorkspaceManager workspaceManager = mock(RunWorkspaceManager.class);
+    private RunResultCache cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.writeString(project.resolve("lint.yml"), "- hosts: all\n");
+        Files.createDirectories(project.resolve("runs"));
+        when(workspaceManager.getProjectPath()).thenReturn(project);
+        when(workspaceManager.getRunsPath()).thenReturn(project.resolve("runs"));
+        cache = cache(true, 60_000, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.stop();
+    }
+
+    @Test
+    void keysOnlyEligibleRuns() {
+        assertThat(cache.keyFor(webhook("cv-1"), CACHEABLE)).isNotNull();
+        assertThat(cache.keyFor(webhook(null), CACHEABLE)).isNull();
+        assertThat(cache.keyFor(webhook("cv-1"), PlaybookRoute.run("apply", "lint.yml", "inventory/hosts", null, false)))
+                .isNull();
+
+        RunResultCache disabled = cache(false, 60_000, 100);
+        assertThat(disabled.keyFor(webhook("cv-1"), CACHEABLE)).isNull();
+    }
+
+    @Test
+    void keyCoversConfigurationVersionAndRoute() {
+        String key = cache.keyFor(webhook("cv-1"), CACHEABLE);
+
+        assertThat(cache.keyFor(webhook("cv-1"), CACHEABLE)).isEqualTo(key);
+        assertThat(cache.keyFor(webhook("cv-2"), CACHEABLE)).isNotEqualTo(key);
+        assertThat(cache.keyFor(webhook("cv-1"),
+                PlaybookRoute.run("lint", "lint.yml", "inventory/hosts", "{\"env\":\"prod\"}", true))).isNotEqualTo(key);
+    }
+
+    @Test
+    void projectChangeDropsEntriesAndChangesTheKey() throws Exception {
+        String key = cache.keyFor(webhook("cv-1"), CACHEABLE);
+        cache.put(key, webhook("cv-1"), null, summary("successful", 3, 0));
+
+        Files.writeString(project.resolve("lint.yml"), "- hosts: web\n");
+        ReflectionTestUtils.invokeMethod(cache, "refreshFingerprint");
+
+        assertThat(cache.size()).isZero();
+        assertThat(cache.keyFor(webhook("cv-1"), CACHEABLE)).isNotEqualTo(key);
+    }
+
+    @Test
+    void runDirectoriesAreNotPartOfTheFingerprint() throws Exception {
+        String key = cache.keyFor(webhook("cv-1"), CACHEABLE);
+
+        Files.writeString(project.resolve("runs/output.log"), "new run output");
+        ReflectionTestUtils.invokeMethod(cache, "refreshFingerprint");
+
+        assertThat(cache.keyFor(webhook("cv-1"), CACHEABLE)).isEqualTo(key);
+    }
+
+    @Test
+    void storesSuccessfulRunsAndPlaybookFailures() {
+        cache.put("passed", webhook("cv-1"), "https://runtask/output", summary("successful", 3, 0));
+        cache.put("failed", webhook("cv-1"), null, summary("failed", 3, 0));
+
+        assertThat(cache.get("passed")).hasValueSatisfying(hit -> {
+            assertThat(hit.getRunId()).isEqualTo("run-1");
+            assertThat(hit.getOutputUrl()).isEqualTo("https://runtask/output");
+        });
+        assertThat(cache.get("failed")).isPresent();
+    }
+
+    @Test
+    void neverStoresFailuresOfTheEnvironment() {
+        cache.put("no-events", webhook("cv-1"), null, summary("failed", 0, 0));
+        cache.put("unreachable", webhook("cv-1"), null, summary("failed", 3, 1));
+        cache.put("timeout", webhook("cv-1"), null, summary("timeout", 3, 0));
+        cache.put("canceled", webhook("cv-1"), null, summary("canceled", 3, 0));
+        cache.put("error", webhook("cv-1"), null, summary("error", 0, 0));
+
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void expiresEntriesAfterTheTtl() throws Exception {
+        cache.stop();
+        cache = cache(true, 20, 100);
+        cache.put("key", webhook("cv-1"), null, summary("successful", 3, 0));
+
+        Thread.sleep(50);
+
+        assertThat(cache.get("key")).isEmpty();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedBeyondMaxEntries() {
+        cache.stop();
+        cache = cache(true, 60_000, 2);
+        cache.put("a", webhook("cv-1"), null, summary("successful", 3, 0));
+        cache.put("b", webhook("cv-1"), null, summary("successful", 3, 0));
+        cache.get("a");
+
+        cache.put("c", webhook("cv-1"), null, summary("successful", 3, 0));
+
+        assertThat(cache.get("a")).isPresent();
+        assertThat(cache.get("b")).isEmpty();
+        assertThat(cache.get("c")).isPresent();
+    }
+
+    private RunResultCache cache(boolean enabled, long ttlMs, int maxEntries) {
+        RunResultCache cache = new RunResultCache(workspaceManager, new RunTaskMetrics(new SimpleMeterRegistry(), false),
+                enabled, ttlMs, maxEntries, 8_388_608, 3_600_000);
+        cache.start();
+        return cache;
+    }
+
+    private static PlaybookSummary summary(String status, int events, int unreachable) {
+        PlaybookSummary summary = new PlaybookSummary();
+        summary.setStatus(status);
+        summary.setEventCount(events);
+        summary.host("web1").setOk(1);
+        summary.host("web2").setUnreachable(unreachable);
+        return summary;
+    }
+
+    private static TerraformWebhook webhook(String configurationVersionId) {
+        return TerraformWebhook.builder()
+                .runId("run-1")
+                .organizationName("org")
+                .workspaceId("ws-1")
+                .workspaceName("networking")
+                .stage("post_plan")
+                .configurationVersionId(configurationVersionId)
+                .build();
+    }
+}
@@ -0,0 +1,173 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.model.RunQueueEntry;
+import com.terraform.runtask.model.TerraformWebhook;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RunSchedulerTest {
+
+    private final AtomicLong ids = new AtomicLong();
+
+    @Test
+    void servesOrganizationsRoundRobin() throws InterruptedException {
+        RunScheduler scheduler = new RunScheduler(4, 0, 0, 0, "", "");
+        scheduler.add(job("a-1", "a", "ws-a", "advisory"));
+        scheduler.add(job("a-2", "a", "ws-a", "advisory"));
+        scheduler.add(job("a-3", "a", "ws-a", "advisory"));
+        scheduler.add(job("b-1", "b", "ws-b", "advisory"));
+        scheduler.add(job("c-1", "c", "ws-c", "advisory"));
+
+        assertThat(drain(scheduler, 5)).containsExactly("a-1", "b-1", "c-1", "a-2", "a-3");
+    }
+
+    @Test
+    void mandatoryRunsGoFirstAcrossOrganizations() throws InterruptedException {
+        RunScheduler scheduler = new RunScheduler(4, 0, 0, 0, "", "");
+        scheduler.add(job("a-1", "a", "ws-a", "advisory"));
+        scheduler.add(job("b-1", "b", "ws-b", "advisory"));
+        scheduler.add(job("b-2", "b", "ws-b", "mandatory"));
+
+        assertThat(drain(scheduler, 3)).containsExactly("b-2", "a-1", "b-1");
+    }
+
+    @Test
+    void blockedRunDoesNotHoldUpLaterRuns() throws InterruptedException {
+        RunScheduler scheduler = new RunScheduler(4, 1, 0, 0, "", "");
+        scheduler.add(job("a-1", "a", "ws-a", "advisory"));
+        scheduler.add(job("a-2", "a", "ws-a", "advisory"));
+        scheduler.add(job("b-1", "b", "ws-b", "advisory"));
+
+        assertThat(drain(scheduler, 2)).containsExactly("a-1", "b-1");
+        assertThat(waitingOn(scheduler, "a-2")).isEqualTo("organization_limit");
+    }
+
+    @Test
+    void releaseFreesTheLimit() throws InterruptedException {
+        RunScheduler scheduler = new RunScheduler(4, 0, 1, 0, "", "");
+        scheduler.add(job("a-1", "a", "ws-a", "advisory"));
+        scheduler.add(job("a-2", "a", "ws-a", "advisory"));
+        RunJob first = scheduler.next();
+        assertThat(waitingOn(scheduler, "a-2")).isEqualTo("workspace_limit");
+
+        scheduler.release(first);
+
+        assertThat(scheduler.next().getWebhook().getRunId()).isEqualTo("a-2");
+    }
+
+    @Test
+    void runsOnTheSameInventoryNeverOverlap() throws InterruptedException {
+        RunScheduler scheduler = new RunScheduler(4, 0, 0, 1, "", "");
+        scheduler.add(job("a-1", "a", "ws-a", "advisory", "inventory/prod"));
+        scheduler.add(job("b-1", "b", "ws-b", "advisory", "inventory/prod"));
+        scheduler.add(job("c-1", "c", "ws-c", "advisory", "inventory/dev"));
+
+        assertThat(drain(scheduler, 2)).containsExactly("a-1", "c-1");
+        assertThat(waitingOn(scheduler, "b-1")).isEqualTo("inventory_busy");
+    }
+
+    @Test
+    void perNameLimitsOverrideTheDefault() throws InterruptedException {
+        RunScheduler scheduler = new RunScheduler(8, 1, 0, 0, "big:2", "");
+        scheduler.add(job("big-1", "big", "ws-1", "advisory"));
+        scheduler.add(job("big-2", "big", "ws-2", "advisory"));
+        scheduler.add(job("big-3", "big", "ws-3", "advisory"));
+        scheduler.add(job("small-1", "small", "ws-4", "advisory"));
+        scheduler.add(job("small-2", "small", "ws-5", "advisory"));
+
+        assertThat(drain(scheduler, 3)).containsExactlyInAnyOrder("big-1", "big-2", "small-1");
+        assertThat(waitingOn(scheduler, "big-3")).isEqualTo("organization_limit");
+        assertThat(waitingOn(scheduler, "small-2")).isEqualTo("organization_limit");
+    }
+
+    @Test
+    void workspaceLimitsApplyByName() throws InterruptedException {
+        RunScheduler scheduler = new RunScheduler(8, 0, 0, 0, "", "ws-a:1");
+        scheduler.add(job("a-1", "a", "ws-a", "advisory"));
+        scheduler.add(job("a-2", "a", "ws-a", "advisory"));
+        scheduler.add(job("a-3", "a", "ws-b", "advisory"));
+
+        assertThat(drain(scheduler, 2)).containsExactly("a-1", "a-3");
+        assertThat(waitingOn(scheduler, "a-2")).isEqualTo("workspace_limit");
+    }
+
+    @Test
+    void snapshotReportsRunningThenPending() throws InterruptedException {
+        RunScheduler scheduler = new RunScheduler(1, 0, 0, 0, "", "");
+        scheduler.add(job("a-1", "a", "ws-a", "advisory"));
+        scheduler.add(job("b-1", "b", "ws-b", "advisory"));
+        scheduler.next();
+
+        List<RunQueueEntry> entries = scheduler.snapshot();
+        assertThat(entries).extracting(RunQueueEntry::getRunId).containsExactly("a-1", "b-1");
+        assertThat(entries).extracting(RunQueueEntry::getWaitingOn).containsExactly("running", "worker");
+        assertThat(scheduler.pending()).isEqualTo(1);
+    }
+
+    @Test
+    void drainPendingEmptiesTheScheduler() {
+        RunScheduler scheduler = new RunScheduler(1, 0, 0, 0, "", "");
+        scheduler.add(job("a-1", "a", "ws-a", "advisory"));
+        scheduler.add(job("a-2", "a", "ws-a", "advisory"));
+
+        assertThat(scheduler.drainPending()).hasSize(2);
+        assertThat(scheduler.pending()).isZero();
+        assertThat(scheduler.snapshot()).isEmpty();
+    }
+
+    @Test
+    void claimedRunsIncludePendingAndRunning() throws InterruptedException {
+        RunScheduler scheduler = new RunScheduler(4, 0, 0, 0, "", "");
+        scheduler.add(job("run-1", "a", "ws-a", "advisory"));
+        scheduler.next();
+        scheduler.add(job("run-1", "a", "ws-a", "advisory"));
+        scheduler.add(job("run-2", "a", "ws-a", "advisory"));
+
+        assertThat(scheduler.claimedRuns("run-1")).hasSize(2);
+    }
+
+    @Test
+    void rejectsMalformedLimits() {
+        assertThatThrownBy(() -> new RunScheduler(4, 0, 0, 0, "acme", ""))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("acme");
+    }
+
+    private List<String> drain(RunScheduler scheduler, int count) throws InterruptedException {
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            order.add(scheduler.next().getWebhook().getRunId());
+        }
+        return order;
+    }
+
+    private static String waitingOn(RunScheduler scheduler, String runId) {
+        return scheduler.snapshot().stream()
+                .filter(entry -> runId.equals(entry.getRunId()))
+                .map(RunQueueEntry::getWaitingOn)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private RunJob job(String runId, String organization, String workspace, String enforcement) {
+        return job(runId, organization, workspace, enforcement, "inventory/hosts");
+    }
+
+    private RunJob job(String runId, String organization, String workspace, String enforcement, String inventory) {
+        TerraformWebhook webhook = TerraformWebhook.builder()
+                .runId(runId)
+                .organizationName(organization)
+                .workspaceId(workspace)
+                .taskResultEnforcementLevel(enforcement)
+                .build();
+        return new RunJob(String.valueOf(ids.incrementAndGet()), webhook,
+                PlaybookRoute.run("default", "site.yml", inventory, null, false),
+                List.of(), System.currentTimeMillis(), 1);
+    }
+}
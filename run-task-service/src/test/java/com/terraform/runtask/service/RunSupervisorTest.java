@@ -0,0 +1,112 @@
+package com.terraform.runtask.service;
+
+import com.terraform.runtask.model.TerraformWebhook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RunSupervisorTest {
+
+    private RunSupervisor supervisor;
+
+    @BeforeEach
+    void setUp() {
+        supervisor = supervisor(20, "none", 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        supervisor.stop();
+    }
+
+    @Test
+    void timeoutCountsFromTheRunnerSlot() throws Exception {
+        RunSupervisor.Execution execution = supervisor.begin(webhook("run-1"));
+
+        // Waiting for a runner slot is not charged to the run
+        Thread.sleep(60);
+        ReflectionTestUtils.invokeMethod(supervisor, "enforceDeadlines");
+        assertThat(execution.getKilledReason()).isNull();
+
+        execution.start();
+        Thread.sleep(60);
+        ReflectionTestUtils.invokeMethod(supervisor, "enforceDeadlines");
+        assertThat(execution.getKilledReason()).isEqualTo(RunSupervisor.TIMEOUT);
+    }
+
+    @Test
+    void stageTimeoutOverridesTheDefault() {
+        supervisor.stop();
+        supervisor = new RunSupervisor(1000, "post_apply:5000", 100, 60_000, "none", 0, 0, 0);
+        supervisor.start();
+
+        assertThat(supervisor.begin(webhook("run-1")).getTimeoutMs()).isEqualTo(5000);
+    }
+
+    @Test
+    void cancelArmedWhileQueuedTakesEffectOnStart() {
+        supervisor.cancelWhenStarted("run-1", "post_apply");
+
+        RunSupervisor.Execution execution = supervisor.begin(webhook("run-1"));
+
+        assertThat(execution.getKilledReason()).isEqualTo(RunSupervisor.CANCELED);
+        assertThat(supervisor.isTerminating("run-1", null)).isTrue();
+        // Consumed: a later execution of the same run is not canceled again
+        supervisor.end(execution);
+        assertThat(supervisor.begin(webhook("run-1")).getKilledReason()).isNull();
+    }
+
+    @Test
+    void disarmedCancelDoesNotApply() {
+        supervisor.cancelWhenStarted("run-1", "post_apply");
+        supervisor.disarm("run-1", "post_apply");
+
+        assertThat(supervisor.begin(webhook("run-1")).getKilledReason()).isNull();
+    }
+
+    @Test
+    void cancelsOnlyMatchingExecutionsOnce() {
+        RunSupervisor.Execution target = supervisor.begin(webhook("run-1"));
+        RunSupervisor.Execution other = supervisor.begin(webhook("run-2"));
+
+        assertThat(supervisor.cancel("run-1", "pre_apply")).isZero();
+        assertThat(supervisor.cancel("run-1", null)).isEqualTo(1);
+        assertThat(supervisor.cancel("run-1", "post_apply")).isZero();
+
+        assertThat(target.getKilledReason()).isEqualTo(RunSupervisor.CANCELED);
+        assertThat(other.getKilledReason()).isNull();
+    }
+
+    @Test
+    void workerPrefixLeavesOutCpuSeconds() {
+        supervisor.stop();
+        supervisor = supervisor(1000, "prlimit", 30);
+
+        assertThat(supervisor.limitPrefix()).containsExactly("prlimit", "--as=536870912", "--cpu=30");
+        assertThat(supervisor.workerLimitPrefix()).containsExactly("prlimit", "--as=536870912");
+        assertThat(supervisor.isCpuSecondsCapped()).isTrue();
+    }
+
+    @Test
+    void rejectsUnknownLimitMode() {
+        assertThatThrownBy(() -> new RunSupervisor(1000, "", 100, 60_000, "cgroups", 0, 0, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static RunSupervisor supervisor(long timeoutMs, String limitMode, long cpuSeconds) {
+        RunSupervisor supervisor = new RunSupervisor(timeoutMs, "", 100, 60_000, limitMode, 512, cpuSeconds, 0);
+        supervisor.start();
+        return supervisor;
+    }
+
+    private static TerraformWebhook webhook(String runId) {
+        return TerraformWebhook.builder()
+                .runId(runId)
+                .stage("post_apply")
+                .build();
+    }
+}
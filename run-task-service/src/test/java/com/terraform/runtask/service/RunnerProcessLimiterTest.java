@@ -0,0 +1,70 @@
+package com.terraform.runtask.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.RepeatedTest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RunnerProcessLimiterTest {
+
+    private final RunnerProcessLimiter limiter =
+            new RunnerProcessLimiter(1, new RunTaskMetrics(new SimpleMeterRegistry(), false));
+
+    @RepeatedTest(10)
+    void freedSlotGoesToTheRunThatWaitedFirst() throws Exception {
+        limiter.acquire();
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        Thread first = start(() -> {
+            limiter.acquire();
+            firstStarted.countDown();
+        });
+        awaitParked(first);
+
+        // Frees its slot and asks for another before the waiting run has woken up
+        CountDownLatch againStarted = new CountDownLatch(1);
+        Thread again = start(() -> {
+            limiter.release();
+            limiter.acquire();
+            againStarted.countDown();
+        });
+
+        assertThat(firstStarted.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(againStarted.await(100, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(limiter.inFlight()).isEqualTo(1);
+
+        limiter.release();
+        assertThat(againStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        first.join();
+        again.join();
+    }
+
+    private void awaitParked(Thread waiter) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((limiter.waiting() == 0 || waiter.getState() != Thread.State.WAITING)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(limiter.waiting()).isEqualTo(1);
+        assertThat(waiter.getState()).isEqualTo(Thread.State.WAITING);
+    }
+
+    private static Thread start(Acquiring body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private interface Acquiring {
+        void run() throws InterruptedException;
+    }
+}
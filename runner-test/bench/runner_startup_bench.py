@@ -0,0 +1,106 @@
+#!/usr/bin/env python3
+"""Compare cold (fork-per-run) and warm (pooled worker) ansible-runner latency.
+
+Cold: `python -m ansible_runner run ... --json`, one interpreter per run, which
+is what AnsibleRunnerService does by default.
+Warm: one long-lived runner_worker.py process (the warm pool worker shipped in
+run-task-service) that receives every job over its stdin pipe.
+
+Both modes still start ansible-playbook as a child process for every job, so the
+difference is only the runner's own interpreter startup and ansible_runner
+import. Playbook startup (the ansible-playbook interpreter, ansible imports,
+inventory parsing) is paid in full either way.
+
+Usage:
+    ./runner_startup_bench.py [--runs 10] [--python python3] [--playbook playbooks/test.yml]
+"""
+import argparse
+import json
+import os
+import shutil
+import statistics
+import subprocess
+import sys
+import tempfile
+import time
+
+HERE = os.path.dirname(os.path.abspath(__file__))
+RUNNER_TEST = os.path.dirname(HERE)
+WORKER = os.path.join(RUNNER_TEST, "..", "run-task-service", "src", "main",
+                      "resources", "runner", "runner_worker.py")
+
+
+def private_data_dir(root, ident):
+    """Mirror RunWorkspaceManager: symlink shared content into a fresh dir."""
+    path = os.path.join(root, ident)
+    os.makedirs(path)
+    for entry in ("project", "inventory", "env"):
+        src = os.path.join(RUNNER_TEST, entry)
+        if os.path.exists(src):
+            os.symlink(src, os.path.join(path, entry))
+    return path
+
+
+def cold(args, root, i):
+    ident = "cold-%d" % i
+    pdd = private_data_dir(root, ident)
+    start = time.perf_counter()
+    subprocess.run(
+        [args.python, "-m", "ansible_runner", "run", pdd, "-p", args.playbook,
+         "--inventory", os.path.join(pdd, "inventory", "hosts"),
+         "--ident", ident, "--json"],
+        stdout=subprocess.DEVNULL, stderr=subprocess.DEVNULL, check=False)
+    return time.perf_counter() - start
+
+
+def warm(worker, root, args, i):
+    ident = "warm-%d" % i
+    pdd = private_data_dir(root, ident)
+    job = {"op": "run", "private_data_dir": pdd, "playbook": args.playbook,
+           "inventory": os.path.join(pdd, "inventory", "hosts"), "ident": ident}
+    start = time.perf_counter()
+    worker.stdin.write(json.dumps(job) + "\n")
+    worker.stdin.flush()
+    for line in worker.stdout:
+        if line.startswith('{"_worker"'):
+            break
+    return time.perf_counter() - start
+
+
+def report(name, samples):
+    ms = sorted(s * 1000 for s in samples)
+    p95 = ms[min(len(ms) - 1, int(round(0.95 * (len(ms) - 1))))]
+    print("%-5s runs=%d mean=%.0fms p50=%.0fms p95=%.0fms min=%.0fms"
+          % (name, len(ms), statistics.mean(ms), statistics.median(ms), p95, ms[0]))
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--runs", type=int, default=10)
+    parser.add_argument("--python", default=sys.executable)
+    parser.add_argument("--playbook", default="playbooks/test.yml")
+    args = parser.parse_args()
+
+    root = tempfile.mkdtemp(prefix="runner-bench-")
+    try:
+        report("cold", [cold(args, root, i) for i in range(args.runs)])
+
+        start = time.perf_counter()
+        worker = subprocess.Popen([args.python, "-u", os.path.abspath(WORKER)],
+                                  stdin=subprocess.PIPE, stdout=subprocess.PIPE,
+                                  stderr=subprocess.DEVNULL, text=True, cwd=root)
+        worker.stdin.write('{"op": "ping"}\n')
+        worker.stdin.flush()
+        worker.stdout.readline()
+        print("warm worker startup (paid once per worker): %.0fms" % ((time.perf_counter() - start) * 1000))
+
+        report("warm", [warm(worker, root, args, i) for i in range(args.runs)])
+        print("(both modes start ansible-playbook per job; the gap is the runner's own startup)")
+        worker.stdin.close()
+        worker.wait(timeout=30)
+    finally:
+        shutil.rmtree(root, ignore_errors=True)
+
+
+if __name__ == "__main__":
+    main()